@@ -0,0 +1,30 @@
+-- Moves primary key generation from IDENTITY columns to sequences with a pooled-lo optimizer
+-- (allocationSize = 50), which lets Hibernate batch INSERT statements.
+--
+-- Run once against an existing database BEFORE starting the application version that uses
+-- sequences. The script is idempotent and can be re-run safely.
+
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS products_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS orders_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS order_items_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS notifications_seq START WITH 1 INCREMENT BY 50;
+
+ALTER SEQUENCE users_seq INCREMENT BY 50;
+ALTER SEQUENCE products_seq INCREMENT BY 50;
+ALTER SEQUENCE orders_seq INCREMENT BY 50;
+ALTER SEQUENCE order_items_seq INCREMENT BY 50;
+ALTER SEQUENCE notifications_seq INCREMENT BY 50;
+
+-- The next value handed out must be above every id already issued by the identity columns
+SELECT setval('users_seq', COALESCE((SELECT MAX(id) FROM users), 0) + 1, false);
+SELECT setval('products_seq', COALESCE((SELECT MAX(id) FROM products), 0) + 1, false);
+SELECT setval('orders_seq', COALESCE((SELECT MAX(id) FROM orders), 0) + 1, false);
+SELECT setval('order_items_seq', COALESCE((SELECT MAX(id) FROM order_items), 0) + 1, false);
+SELECT setval('notifications_seq', COALESCE((SELECT MAX(id) FROM notifications), 0) + 1, false);
+
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE products ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE orders ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE order_items ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE notifications ALTER COLUMN id DROP IDENTITY IF EXISTS;
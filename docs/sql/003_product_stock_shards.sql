@@ -0,0 +1,17 @@
+-- Adds opt-in sharded stock counters for hot products.
+--
+-- Run once against an existing database BEFORE starting the application version that uses
+-- sharded stock (the new NOT NULL column needs a default for existing rows). The script is
+-- idempotent and can be re-run safely.
+
+ALTER TABLE products ADD COLUMN IF NOT EXISTS stock_shards INTEGER NOT NULL DEFAULT 0;
+
+CREATE SEQUENCE IF NOT EXISTS product_stock_shards_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS product_stock_shards (
+    id BIGINT PRIMARY KEY,
+    product_id BIGINT NOT NULL REFERENCES products (id),
+    shard INTEGER NOT NULL,
+    stock INTEGER NOT NULL,
+    CONSTRAINT uk_product_stock_shards_product_shard UNIQUE (product_id, shard)
+);
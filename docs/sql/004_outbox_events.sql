@@ -0,0 +1,15 @@
+-- Adds the transactional outbox for order events.
+--
+-- Only needed when the schema is not managed by Hibernate (ddl-auto=validate). The script is
+-- idempotent and can be re-run safely.
+
+CREATE SEQUENCE IF NOT EXISTS outbox_events_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id BIGINT PRIMARY KEY,
+    topic VARCHAR(100) NOT NULL,
+    message_key VARCHAR(100),
+    event_type VARCHAR(50) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP
+);
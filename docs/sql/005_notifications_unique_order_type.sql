@@ -0,0 +1,14 @@
+-- Makes notifications unique per order and type, which lets redelivered order events be skipped by the
+-- insert itself.
+--
+-- Run once against an existing database BEFORE starting the application version that deduplicates
+-- notifications: Hibernate (ddl-auto=update) cannot add the constraint while duplicates exist. The
+-- oldest notification of each order and type is kept. The script is idempotent and can be re-run safely.
+
+DELETE FROM notifications duplicate
+USING notifications kept
+WHERE duplicate.order_id = kept.order_id
+  AND duplicate.type = kept.type
+  AND duplicate.id > kept.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_notifications_order_type ON notifications (order_id, type);
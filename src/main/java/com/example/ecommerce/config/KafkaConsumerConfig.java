@@ -0,0 +1,179 @@
+package com.example.ecommerce.config;
+
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OffsetWatermarks;
+import com.example.ecommerce.service.OrderEventConsumer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConsumerAwareRecordRecoverer;
+import org.springframework.kafka.listener.ContainerPartitionPausingBackOffManager;
+import org.springframework.kafka.listener.ContainerPausingBackOffHandler;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.KafkaConsumerBackoffManager;
+import org.springframework.kafka.listener.ListenerContainerPauseService;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.SeekUtils;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    // Drops the order events a listener's OrderEventDeserializer left unparsed; records that failed
+    // to deserialize also have a null value but carry the exception header and are kept for error handling
+    @Bean
+    public RecordFilterStrategy<String, Object> skippedOrderEventFilter() {
+        return (ConsumerRecord<String, Object> record) -> record.value() == null
+                && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) == null;
+    }
+
+    // Used by every listener container: a record whose processing fails is tried twice more, a second
+    // apart, then dead-lettered; one that cannot be deserialized is dead-lettered right away
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler(DeadLetterService deadLetterService) {
+        return new DefaultErrorHandler(deadLetterService.getRecoverer(), new FixedBackOff(1000, 2));
+    }
+
+    // For listeners that read every partition of their topic on each instance: they assign the partitions themselves
+    // instead of joining a consumer group, and without a group id nothing is committed, so restarts and redeploys
+    // leave no groups or offsets behind on the broker
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> groupLessContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        Map<String, Object> consumerConfig = new HashMap<>(consumerFactory.getConfigurationProperties());
+        consumerConfig.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, new DefaultKafkaConsumerFactory<>(consumerConfig));
+        return factory;
+    }
+
+    // Committed offsets of the order-created listener in key-ordered mode
+    @Bean
+    public OffsetWatermarks orderEventWatermarks() {
+        return new OffsetWatermarks(OrderEventConsumer.LISTENER_ID);
+    }
+
+    // For the order-created listener, which acknowledges each poll itself once its events were handled. In
+    // key-ordered mode it acknowledges nothing: before each poll its partitions are paused while the workers
+    // are full and committed up to their watermarks, and a poll the listener got past, filtered-out events
+    // included, moves the watermarks on. The listener is looked up when polling starts, as it is still being
+    // created when its container factory is needed
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> orderEventContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            OffsetWatermarks orderEventWatermarks,
+            ObjectProvider<OrderEventConsumer> orderEventConsumer,
+            @Value("${kafka.order-events.key-ordered.workers:0}") int workers) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        if (workers > 0) {
+            ContainerProperties containerProperties = factory.getContainerProperties();
+            containerProperties.setConsumerRebalanceListener(orderEventWatermarks);
+            // Paused partitions are resumed before a poll, so polls are kept as short as when the container is paused
+            containerProperties.setPollTimeout(containerProperties.getPollTimeoutWhilePaused().toMillis());
+            factory.setBatchInterceptor(new BatchInterceptor<>() {
+                @Override
+                public ConsumerRecords<Object, Object> intercept(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+                    return records;
+                }
+
+                @Override
+                public void setupThreadState(Consumer<?, ?> consumer) {
+                    orderEventConsumer.getObject().beforePoll(consumer);
+                }
+
+                @Override
+                public void success(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+                    orderEventWatermarks.pass(records);
+                }
+            });
+        } else {
+            // Filtered-out events are acknowledged as well, or they would hold back every commit after them
+            factory.setAckDiscarded(true);
+        }
+        return factory;
+    }
+
+    // Committed offsets of the payment retry listener
+    @Bean
+    public OffsetWatermarks paymentRetryWatermarks() {
+        return new OffsetWatermarks(OrderEventConsumer.PAYMENT_RETRY_LISTENER_ID);
+    }
+
+    // For the payment retry listener, which backs off on its topic until a retry is due. A retry that is not due
+    // is left unrecovered, so it is sought back and redelivered once its partition resumes; as that happens for
+    // every retry, seeks are not logged as errors. Failed retries are still tried twice more and dead-lettered.
+    // Due retries are attempted off the listener thread, so nothing is acknowledged: before each poll the retry
+    // topics are committed up to their watermarks, and a record the listener or the recoverer got past moves them on
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> paymentRetryContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            DeadLetterService deadLetterService,
+            OffsetWatermarks paymentRetryWatermarks) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(paymentRetryWatermarks);
+        factory.setRecordInterceptor(new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+                return record;
+            }
+
+            @Override
+            public void setupThreadState(Consumer<?, ?> consumer) {
+                paymentRetryWatermarks.commit(consumer);
+            }
+
+            @Override
+            public void success(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+                paymentRetryWatermarks.pass(record);
+            }
+        });
+        ConsumerAwareRecordRecoverer recoverer = (record, consumer, exception) -> {
+            if (SeekUtils.isBackoffException(exception)) {
+                throw (NestedRuntimeException) exception;
+            }
+            deadLetterService.deadLetter(record, consumer, exception);
+            paymentRetryWatermarks.pass(record);
+        };
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(recoverer, new FixedBackOff(1000, 2));
+        errorHandler.setLogLevel(KafkaException.Level.DEBUG);
+        errorHandler.setAckAfterHandle(false);
+        factory.setCommonErrorHandler(errorHandler);
+        return factory;
+    }
+
+    // Pauses a retry topic partition until its next record is due and resumes it on the task scheduler
+    @Bean
+    public KafkaConsumerBackoffManager paymentRetryBackoffManager(KafkaListenerEndpointRegistry listenerRegistry,
+                                                                  TaskScheduler taskScheduler) {
+        return new ContainerPartitionPausingBackOffManager(listenerRegistry,
+                new ContainerPausingBackOffHandler(new ListenerContainerPauseService(listenerRegistry, taskScheduler)));
+    }
+}
@@ -1,20 +1,71 @@
 package com.example.ecommerce.config;
 
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.example.ecommerce.service.PaymentRetryPolicy;
+import com.example.ecommerce.service.ProductEventPublisher;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.time.Duration;
 
 @Configuration
 @Profile("!test")
 public class KafkaTopicConfig {
 
+    // Events are keyed by order id, so partitions bound how many consumers of a group can work in parallel.
+    // Kafka can only add partitions to an existing topic, which moves keys to other partitions once
+    @Bean
+    public NewTopic orderEventsTopic(@Value("${kafka.order-events.partitions:6}") int partitions) {
+        return TopicBuilder.name(OrderEventPublisher.TOPIC)
+                .partitions(partitions)
+                .replicas(1)
+                .build();
+    }
+
+    // Retries are keyed by order id like the events that caused them and are consumed with the same parallelism
+    @Bean
+    public KafkaAdmin.NewTopics paymentRetryTopics(PaymentRetryPolicy retryPolicy,
+                                                   @Value("${kafka.order-events.partitions:6}") int partitions) {
+        return new KafkaAdmin.NewTopics(retryPolicy.getTopics().stream()
+                .map(topic -> TopicBuilder.name(topic).partitions(partitions).replicas(1).build())
+                .toArray(NewTopic[]::new));
+    }
+
+    // Compacted, so the topic keeps the latest status of every order for instances rebuilding their status store,
+    // and a deleted order's tombstone is eventually dropped along with it
+    @Bean
+    public NewTopic orderStatusTopic(@Value("${kafka.order-events.partitions:6}") int partitions) {
+        return TopicBuilder.name(OrderEventPublisher.STATUS_TOPIC)
+                .partitions(partitions)
+                .replicas(1)
+                .compact()
+                .build();
+    }
+
+    // Dead letters are kept long enough to investigate and replay them after an incident
+    @Bean
+    public NewTopic orderEventsDeadLetterTopic(@Value("${kafka.order-events.partitions:6}") int partitions) {
+        return TopicBuilder.name(DeadLetterService.TOPIC)
+                .partitions(partitions)
+                .replicas(1)
+                .config(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(Duration.ofDays(14).toMillis()))
+                .build();
+    }
+
+    // Only instances that are running when a product changes need the event, so it is kept briefly
     @Bean
-    public NewTopic orderEventsTopic() {
-        return TopicBuilder.name("order-events")
+    public NewTopic productEventsTopic() {
+        return TopicBuilder.name(ProductEventPublisher.TOPIC)
                 .partitions(1)
                 .replicas(1)
+                .config(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(Duration.ofHours(1).toMillis()))
                 .build();
     }
 }
@@ -0,0 +1,49 @@
+package com.example.ecommerce.controller;
+
+import com.example.ecommerce.dto.ErrorMessageDTO;
+import com.example.ecommerce.dto.backpressure.ConsumerBackpressureStatsDTO;
+import com.example.ecommerce.service.ConsumerBackpressure;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/consumer-backpressure")
+@RequiredArgsConstructor
+@Tag(name = "Consumer backpressure", description = "Pausing of background consumers while the database pool is saturated")
+@SecurityRequirement(name = "bearerAuth")
+public class ConsumerBackpressureController {
+
+    private final ConsumerBackpressure consumerBackpressure;
+
+    @GetMapping
+    @Operation(
+            summary = "Get consumer backpressure statistics",
+            description = "Returns the database pool pressure last seen on this instance, whether the order and "
+                    + "notification consumers are paused because of it, and how often and how long they were paused"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Statistics retrieved successfully",
+                    content = @Content(schema = @Schema(implementation = ConsumerBackpressureStatsDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<ConsumerBackpressureStatsDTO> getStats() {
+        return ResponseEntity.ok(consumerBackpressure.stats());
+    }
+}
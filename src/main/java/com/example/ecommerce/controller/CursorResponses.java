@@ -0,0 +1,23 @@
+package com.example.ecommerce.controller;
+
+import com.example.ecommerce.dto.CursorPageDTO;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+final class CursorResponses {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private CursorResponses() {
+    }
+
+    // The body stays a plain JSON array; the cursor for the next page travels in a header
+    static <T> ResponseEntity<List<T>> ok(CursorPageDTO<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+}
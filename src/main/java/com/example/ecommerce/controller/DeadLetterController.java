@@ -0,0 +1,68 @@
+package com.example.ecommerce.controller;
+
+import com.example.ecommerce.dto.ErrorMessageDTO;
+import com.example.ecommerce.dto.ValidationErrorDTO;
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayRequestDTO;
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayResultDTO;
+import com.example.ecommerce.service.DeadLetterService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/dead-letters")
+@RequiredArgsConstructor
+@Tag(name = "Dead letters", description = "Recovery of order events that could not be processed")
+@SecurityRequirement(name = "bearerAuth")
+public class DeadLetterController {
+
+    private final DeadLetterService deadLetterService;
+
+    @PostMapping("/replay")
+    @Operation(
+            summary = "Replay dead-lettered order events",
+            description = "Sends the dead letters that match the filters back to the topic they failed on, with their "
+                    + "original payload and headers, at the given rate. Only records already dead-lettered when the "
+                    + "replay starts are considered. The request returns once every replayed record was sent, so "
+                    + "limit / rate may not exceed the configured maximum replay duration, and only one replay runs "
+                    + "at a time."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Replay finished",
+                    content = @Content(schema = @Schema(implementation = DeadLetterReplayResultDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Validation failed",
+                    content = @Content(schema = @Schema(implementation = ValidationErrorDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Another replay is still running",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Internal server error",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<DeadLetterReplayResultDTO> replay(@Valid @RequestBody DeadLetterReplayRequestDTO requestDTO) {
+        return ResponseEntity.ok(deadLetterService.replay(requestDTO));
+    }
+}
@@ -1,12 +1,17 @@
 package com.example.ecommerce.controller;
 
+import com.example.ecommerce.dto.CursorPageDTO;
 import com.example.ecommerce.dto.ErrorMessageDTO;
 import com.example.ecommerce.dto.ValidationErrorDTO;
+import com.example.ecommerce.dto.order.OrderBatchResponseDTO;
 import com.example.ecommerce.dto.order.OrderRequestDTO;
 import com.example.ecommerce.dto.order.OrderResponseDTO;
+import com.example.ecommerce.dto.order.OrderStatusDTO;
 import com.example.ecommerce.dto.order.OrderUpdateDTO;
 import com.example.ecommerce.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -16,8 +21,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -33,7 +40,7 @@ public class OrderController {
     @PostMapping
     @Operation(
             summary = "Create a new order",
-            description = "Creates a new order with order items. Requires valid user ID and product IDs. Quantity must be > 0, price and total must be >= 0."
+            description = "Creates a new order with order items. Requires valid user ID and product IDs. Quantity must be > 0. Item prices and the total are computed from the catalog and the values sent must match them."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -43,7 +50,7 @@ public class OrderController {
             ),
             @ApiResponse(
                     responseCode = "400",
-                    description = "Validation failed",
+                    description = "Validation failed or prices do not match the catalog",
                     content = @Content(schema = @Schema(implementation = ValidationErrorDTO.class))
             ),
             @ApiResponse(
@@ -56,6 +63,11 @@ public class OrderController {
                     description = "User or product not found",
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Insufficient stock for a product",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Internal server error",
@@ -67,6 +79,41 @@ public class OrderController {
         return new ResponseEntity<>(responseDTO, HttpStatus.CREATED);
     }
 
+    @PostMapping("/batch")
+    @Operation(
+            summary = "Create orders in bulk",
+            description = "Creates up to 5000 orders from an array of order requests. Users and products are resolved "
+                    + "with set-based lookups and orders are saved in batched transactions. Each order is validated "
+                    + "independently; the response reports the outcome of every order, so rejected orders do not "
+                    + "fail the whole request."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Batch processed, see per-order results",
+                    content = @Content(schema = @Schema(implementation = OrderBatchResponseDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Empty or oversized batch",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Internal server error",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<OrderBatchResponseDTO> createOrders(@RequestBody List<OrderRequestDTO> requestDTOs) {
+        OrderBatchResponseDTO responseDTO = orderService.createOrders(requestDTOs);
+        return ResponseEntity.ok(responseDTO);
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get order by ID",
@@ -99,17 +146,54 @@ public class OrderController {
         return ResponseEntity.ok(responseDTO);
     }
 
+    @GetMapping("/{id}/status")
+    @Operation(
+            summary = "Get order status",
+            description = "Returns the current status of an order from this instance's status store, built from the "
+                    + "order-status topic, without a database query. Meant for polling; the status can trail the "
+                    + "database by the outbox relay delay. Orders the store does not hold, and every order while the "
+                    + "store is still being rebuilt after a start, are looked up in the database"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Status found",
+                    content = @Content(schema = @Schema(implementation = OrderStatusDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Order not found",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<OrderStatusDTO> getOrderStatus(@PathVariable Long id) {
+        OrderStatusDTO status = orderService.getOrderStatus(id);
+        return ResponseEntity.ok(status);
+    }
+
     @GetMapping
     @Operation(
             summary = "Get all orders",
-            description = "Retrieves a list of all orders including their items"
+            description = "Retrieves a page of orders including their items, ordered by ID. Pass the X-Next-Cursor response header as `after` to fetch the next page."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
                     description = "Orders retrieved successfully",
+                    headers = @Header(name = CursorResponses.NEXT_CURSOR_HEADER,
+                            description = "Cursor for the next page, absent on the last page"),
                     content = @Content(schema = @Schema(implementation = OrderResponseDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid cursor or limit",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "401",
                     description = "Authentication required",
@@ -121,22 +205,59 @@ public class OrderController {
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             )
     })
-    public ResponseEntity<List<OrderResponseDTO>> getAllOrders() {
-        List<OrderResponseDTO> orders = orderService.getAllOrders();
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<List<OrderResponseDTO>> getAllOrders(
+            @Parameter(description = "Cursor returned by the previous page")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Page size, 1-500 (default 50)")
+            @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<OrderResponseDTO> orders = orderService.getAllOrders(after, limit);
+        return CursorResponses.ok(orders);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Export all orders",
+            description = "Streams every order as newline-delimited JSON (one order per line), ordered by ID. "
+                    + "Orders are read through a database cursor, so memory use does not grow with the number of orders."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Order export stream",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = OrderResponseDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        StreamingResponseBody body = orderService::exportOrders;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/user/{userId}")
     @Operation(
             summary = "Get orders by user ID",
-            description = "Retrieves all orders for a specific user"
+            description = "Retrieves a page of orders for a specific user, ordered by ID. Pass the X-Next-Cursor response header as `after` to fetch the next page."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
                     description = "Orders retrieved successfully",
+                    headers = @Header(name = CursorResponses.NEXT_CURSOR_HEADER,
+                            description = "Cursor for the next page, absent on the last page"),
                     content = @Content(schema = @Schema(implementation = OrderResponseDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid cursor or limit",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "401",
                     description = "Authentication required",
@@ -153,15 +274,20 @@ public class OrderController {
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             )
     })
-    public ResponseEntity<List<OrderResponseDTO>> getOrdersByUserId(@PathVariable Long userId) {
-        List<OrderResponseDTO> orders = orderService.getOrdersByUserId(userId);
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<List<OrderResponseDTO>> getOrdersByUserId(
+            @PathVariable Long userId,
+            @Parameter(description = "Cursor returned by the previous page")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Page size, 1-500 (default 50)")
+            @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<OrderResponseDTO> orders = orderService.getOrdersByUserId(userId, after, limit);
+        return CursorResponses.ok(orders);
     }
 
     @PutMapping("/{id}")
     @Operation(
             summary = "Update order by ID",
-            description = "Updates an existing order. Can update status, total, and items. Validation rules apply."
+            description = "Updates an existing order. Can update status, total, and items. Item prices and the total are computed from the catalog and the values sent must match them."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -171,7 +297,7 @@ public class OrderController {
             ),
             @ApiResponse(
                     responseCode = "400",
-                    description = "Validation failed",
+                    description = "Validation failed or prices do not match the catalog",
                     content = @Content(schema = @Schema(implementation = ValidationErrorDTO.class))
             ),
             @ApiResponse(
@@ -184,6 +310,11 @@ public class OrderController {
                     description = "Order or product not found",
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Insufficient stock for a product",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Internal server error",
@@ -1,12 +1,16 @@
 package com.example.ecommerce.controller;
 
+import com.example.ecommerce.dto.CursorPageDTO;
 import com.example.ecommerce.dto.ErrorMessageDTO;
 import com.example.ecommerce.dto.ValidationErrorDTO;
+import com.example.ecommerce.dto.product.ProductCacheStatsDTO;
 import com.example.ecommerce.dto.product.ProductRequestDTO;
 import com.example.ecommerce.dto.product.ProductResponseDTO;
 import com.example.ecommerce.dto.product.ProductUpdateDTO;
 import com.example.ecommerce.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -65,7 +69,7 @@ public class ProductController {
     @GetMapping("/{id}")
     @Operation(
             summary = "Get product by ID",
-            description = "Retrieves a specific product by its ID"
+            description = "Retrieves a specific product by its ID. Served from the product cache, so stock can lag behind recent orders by up to the cache TTL."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -94,17 +98,45 @@ public class ProductController {
         return ResponseEntity.ok(responseDTO);
     }
 
+    @GetMapping("/cache/stats")
+    @Operation(
+            summary = "Get product cache statistics",
+            description = "Returns hit, miss, load and eviction counters of the in-process product cache on this instance"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Statistics retrieved successfully",
+                    content = @Content(schema = @Schema(implementation = ProductCacheStatsDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            )
+    })
+    public ResponseEntity<ProductCacheStatsDTO> getCacheStats() {
+        return ResponseEntity.ok(productService.getCacheStats());
+    }
+
     @GetMapping
     @Operation(
             summary = "Get all products",
-            description = "Retrieves a list of all products"
+            description = "Retrieves a page of products, ordered by ID. Pass the X-Next-Cursor response header as `after` to fetch the next page."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
                     description = "Products retrieved successfully",
+                    headers = @Header(name = CursorResponses.NEXT_CURSOR_HEADER,
+                            description = "Cursor for the next page, absent on the last page"),
                     content = @Content(schema = @Schema(implementation = ProductResponseDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid cursor or limit",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "401",
                     description = "Authentication required",
@@ -116,9 +148,13 @@ public class ProductController {
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             )
     })
-    public ResponseEntity<List<ProductResponseDTO>> getAllProducts() {
-        List<ProductResponseDTO> products = productService.getAllProducts();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<List<ProductResponseDTO>> getAllProducts(
+            @Parameter(description = "Cursor returned by the previous page")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Page size, 1-500 (default 50)")
+            @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<ProductResponseDTO> products = productService.getAllProducts(after, limit);
+        return CursorResponses.ok(products);
     }
 
     @PutMapping("/{id}")
@@ -1,5 +1,6 @@
 package com.example.ecommerce.controller;
 
+import com.example.ecommerce.dto.CursorPageDTO;
 import com.example.ecommerce.dto.ErrorMessageDTO;
 import com.example.ecommerce.dto.ValidationErrorDTO;
 import com.example.ecommerce.dto.user.UserRequestDTO;
@@ -7,6 +8,8 @@ import com.example.ecommerce.dto.user.UserResponseDTO;
 import com.example.ecommerce.dto.user.UserUpdateDTO;
 import com.example.ecommerce.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -97,14 +100,21 @@ public class UserController {
     @GetMapping
     @Operation(
             summary = "Get all users",
-            description = "Retrieves a list of all users"
+            description = "Retrieves a page of users, ordered by ID. Pass the X-Next-Cursor response header as `after` to fetch the next page."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
                     description = "Users retrieved successfully",
+                    headers = @Header(name = CursorResponses.NEXT_CURSOR_HEADER,
+                            description = "Cursor for the next page, absent on the last page"),
                     content = @Content(schema = @Schema(implementation = UserResponseDTO.class))
             ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid cursor or limit",
+                    content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
+            ),
             @ApiResponse(
                     responseCode = "401",
                     description = "Authentication required",
@@ -116,9 +126,13 @@ public class UserController {
                     content = @Content(schema = @Schema(implementation = ErrorMessageDTO.class))
             )
     })
-    public ResponseEntity<List<UserResponseDTO>> getAllUsers() {
-        List<UserResponseDTO> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserResponseDTO>> getAllUsers(
+            @Parameter(description = "Cursor returned by the previous page")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Page size, 1-500 (default 50)")
+            @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<UserResponseDTO> users = userService.getAllUsers(after, limit);
+        return CursorResponses.ok(users);
     }
 
     @PutMapping("/{id}")
@@ -0,0 +1,42 @@
+package com.example.ecommerce.dto.backpressure;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Database pool pressure as last seen by the consumer backpressure, and its counters since startup")
+public class ConsumerBackpressureStatsDTO {
+
+    @Schema(description = "False when switched off or when the data source is not a Hikari pool")
+    private boolean enabled;
+
+    @Schema(description = "False when Hikari reports to another metrics tracker, so wait times and timeouts are not seen "
+            + "and only active and pending connections count")
+    private boolean acquisitionsTracked;
+
+    @Schema(description = "Whether the order and notification consumers are paused right now")
+    private boolean paused;
+
+    private long pauseCount;
+
+    @Schema(description = "Total time the consumers were paused, in milliseconds")
+    private long pausedMillis;
+
+    @Schema(description = "Average time to acquire a connection during the last check interval, in milliseconds")
+    private double averageConnectionWaitMillis;
+
+    private int threadsAwaitingConnection;
+    private int activeConnections;
+    private int totalConnections;
+    private int maximumPoolSize;
+
+    @Schema(description = "Connection requests that timed out")
+    private long connectionTimeouts;
+
+    @Schema(description = "Order events on the key-ordered workers plus payments still to be settled")
+    private int consumerInFlight;
+}
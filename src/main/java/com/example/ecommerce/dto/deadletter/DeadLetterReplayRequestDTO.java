@@ -0,0 +1,45 @@
+package com.example.ecommerce.dto.deadletter;
+
+import com.example.ecommerce.event.OrderEventType;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Which dead letters to replay and how fast; filters that are left out match every record")
+public class DeadLetterReplayRequestDTO {
+
+    @Schema(description = "Only records dead-lettered at or after this time", example = "2024-03-14T15:00:00")
+    private LocalDateTime from;
+
+    @Schema(description = "Only records dead-lettered at or before this time", example = "2024-03-14T16:00:00")
+    private LocalDateTime to;
+
+    @Schema(description = "Only records that failed on this topic", example = "order-events")
+    private String originalTopic;
+
+    @Schema(description = "Only events of this type", example = "ORDER_CREATED")
+    private OrderEventType eventType;
+
+    @Schema(description = "Only records that failed with this exception, or with this as the cause",
+            example = "org.springframework.dao.DataAccessResourceFailureException")
+    private String exceptionClass;
+
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 100000, message = "Limit must not exceed 100000")
+    @Schema(description = "Maximum number of records to replay", example = "10000")
+    private int limit = 10000;
+
+    @Min(value = 1, message = "Rate must be at least 1 record per second")
+    @Max(value = 50000, message = "Rate must not exceed 50000 records per second")
+    @Schema(description = "Records sent per second; limit / rate must stay within the instance's maximum replay duration",
+            example = "1000")
+    private int ratePerSecond = 1000;
+}
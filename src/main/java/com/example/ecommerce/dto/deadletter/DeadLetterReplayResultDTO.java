@@ -0,0 +1,24 @@
+package com.example.ecommerce.dto.deadletter;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Outcome of a dead letter replay")
+public class DeadLetterReplayResultDTO {
+
+    @Schema(description = "Dead letters read within the time range", example = "12000")
+    private int scanned;
+
+    @Schema(description = "Records sent back to their original topic", example = "9500")
+    private int replayed;
+
+    @Schema(description = "Matching records that could not be sent", example = "0")
+    private int failed;
+
+    private long elapsedMs;
+}
@@ -0,0 +1,24 @@
+package com.example.ecommerce.dto.order;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Per-order results of a batch order request")
+public class OrderBatchResponseDTO {
+
+    @Schema(description = "Number of orders created", example = "998")
+    private int created;
+
+    @Schema(description = "Number of orders rejected", example = "2")
+    private int failed;
+
+    @Schema(description = "One result per submitted order, in request order")
+    private List<OrderBatchResultDTO> results;
+}
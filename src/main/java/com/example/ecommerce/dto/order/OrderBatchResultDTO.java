@@ -0,0 +1,25 @@
+package com.example.ecommerce.dto.order;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Outcome of a single order in a batch request")
+public class OrderBatchResultDTO {
+
+    @Schema(description = "Position of the order in the request array", example = "0")
+    private int index;
+
+    @Schema(description = "Whether the order was created", example = "true")
+    private boolean created;
+
+    @Schema(description = "ID of the created order, null if it was rejected", example = "42")
+    private Long orderId;
+
+    @Schema(description = "Why the order was rejected, null if it was created", example = "Product not found with id: 7")
+    private String error;
+}
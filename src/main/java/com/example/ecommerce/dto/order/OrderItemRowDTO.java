@@ -0,0 +1,21 @@
+package com.example.ecommerce.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Flat projection of an order item together with the id of the order it belongs to
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderItemRowDTO {
+
+    private Long orderId;
+    private Long id;
+    private Long productId;
+    private String productName;
+    private Integer quantity;
+    private BigDecimal price;
+}
@@ -21,4 +21,14 @@ public class OrderResponseDTO {
     private List<OrderItemDTO> items;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    public OrderResponseDTO(Long id, Long userId, BigDecimal total, OrderStatus status,
+                            LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.id = id;
+        this.userId = userId;
+        this.total = total;
+        this.status = status;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
 }
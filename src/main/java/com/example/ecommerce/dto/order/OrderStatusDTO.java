@@ -0,0 +1,18 @@
+package com.example.ecommerce.dto.order;
+
+import com.example.ecommerce.entity.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusDTO {
+
+    private Long orderId;
+    private OrderStatus status;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,36 @@
+package com.example.ecommerce.dto.product;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Product cache counters since startup")
+public class ProductCacheStatsDTO {
+
+    @Schema(description = "Approximate number of cached products")
+    private long size;
+
+    @Schema(description = "Configured maximum number of cached products")
+    private long maximumSize;
+
+    private long hitCount;
+    private long missCount;
+
+    @Schema(description = "Hits divided by requests, 1.0 when nothing was requested yet")
+    private double hitRate;
+
+    private long loadSuccessCount;
+
+    @Schema(description = "Loads that failed or found no product")
+    private long loadFailureCount;
+
+    @Schema(description = "Average time spent loading products from the database, in milliseconds")
+    private double averageLoadMillis;
+
+    @Schema(description = "Entries removed because of the size bound or the TTL")
+    private long evictionCount;
+}
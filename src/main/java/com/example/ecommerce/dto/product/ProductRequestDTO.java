@@ -25,4 +25,8 @@ public class ProductRequestDTO {
     @NotNull(message = "Stock is required")
     @Min(value = 0, message = "Stock must be greater than or equal to 0")
     private Integer stock;
+
+    @Min(value = 0, message = "Stock shards must be greater than or equal to 0")
+    @Max(value = 64, message = "Stock shards must not exceed 64")
+    private Integer stockShards;
 }
@@ -17,5 +17,6 @@ public class ProductResponseDTO {
     private String description;
     private BigDecimal price;
     private Integer stock;
+    private Integer stockShards;
     private LocalDateTime createdAt;
 }
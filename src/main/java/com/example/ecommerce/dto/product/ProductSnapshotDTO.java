@@ -0,0 +1,19 @@
+package com.example.ecommerce.dto.product;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Immutable copy of a product as held by the product cache, safe to share between threads
+@Value
+public class ProductSnapshotDTO {
+
+    Long id;
+    String name;
+    String description;
+    BigDecimal price;
+    Integer stock;
+    Integer stockShards;
+    LocalDateTime createdAt;
+}
@@ -0,0 +1,15 @@
+package com.example.ecommerce.dto.product;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Summed stock of a sharded product
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStockDTO {
+
+    private Long productId;
+    private Long stock;
+}
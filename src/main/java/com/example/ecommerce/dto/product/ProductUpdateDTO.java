@@ -1,6 +1,7 @@
 package com.example.ecommerce.dto.product;
 
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
@@ -24,4 +25,8 @@ public class ProductUpdateDTO {
 
     @Min(value = 0, message = "Stock must be greater than or equal to 0")
     private Integer stock;
+
+    @Min(value = 0, message = "Stock shards must be greater than or equal to 0")
+    @Max(value = 64, message = "Stock shards must not exceed 64")
+    private Integer stockShards;
 }
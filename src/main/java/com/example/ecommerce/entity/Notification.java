@@ -9,14 +9,17 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notifications")
+// One notification per order and type, so redelivered events cannot store it twice
+@Table(name = "notifications", uniqueConstraints =
+        @UniqueConstraint(name = "uk_notifications_order_type", columnNames = {"order_id", "type"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Notification {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notifications_seq")
+    @SequenceGenerator(name = "notifications_seq", sequenceName = "notifications_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
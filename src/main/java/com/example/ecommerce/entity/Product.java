@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 100)
@@ -32,6 +33,10 @@ public class Product {
     @Column(nullable = false)
     private Integer stock;
 
+    // Number of ProductStockShard counters holding this product's stock; 0 keeps the stock in this row
+    @Column(name = "stock_shards", nullable = false)
+    private Integer stockShards = 0;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,31 @@
+package com.example.ecommerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One of the sub-counters a hot product's stock is split across, so reservations spread their row locks
+@Entity
+@Table(name = "product_stock_shards",
+        uniqueConstraints = @UniqueConstraint(name = "uk_product_stock_shards_product_shard", columnNames = {"product_id", "shard"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStockShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_stock_shards_seq")
+    @SequenceGenerator(name = "product_stock_shards_seq", sequenceName = "product_stock_shards_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    private Product product;
+
+    @Column(nullable = false)
+    private Integer shard;
+
+    @Column(nullable = false)
+    private Integer stock;
+}
@@ -0,0 +1,158 @@
+package com.example.ecommerce.event;
+
+import com.example.ecommerce.entity.OrderStatus;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary wire format for order events, used instead of JSON when
+ * {@code kafka.order-events.wire-format=binary}. Records in this format carry the
+ * {@value #FORMAT_HEADER} header; the event type itself comes from the {@link OrderEventType#HEADER}.
+ * <p>
+ * Layout (big-endian): a version byte, then per type
+ * <ul>
+ *   <li>created: orderId (8), userId (8), total, timestamp</li>
+ *   <li>completed / expired: orderId (8), timestamp</li>
+ *   <li>payment retry: orderId (8), attempt (1), timestamp</li>
+ *   <li>status changed: orderId (8), status, timestamp</li>
+ * </ul>
+ * A status is the length (1) and ASCII bytes of its name; a total is its scale (1) followed by the length (1) and bytes of its unscaled value; a timestamp
+ * is its UTC epoch second (8) and nanosecond (4). All fields are required.
+ */
+public final class OrderEventCodec {
+
+    public static final String FORMAT_HEADER = "eventFormat";
+    public static final String BINARY_FORMAT = "binary";
+    public static final byte VERSION = 1;
+
+    private static final int ID_BYTES = Long.BYTES;
+    private static final int TIMESTAMP_BYTES = Long.BYTES + Integer.BYTES;
+
+    private OrderEventCodec() {
+    }
+
+    public static byte[] encode(OrderEventType type, Object event) {
+        try {
+            return switch (type) {
+                case ORDER_CREATED -> {
+                    OrderCreatedEvent created = (OrderCreatedEvent) event;
+                    byte[] unscaled = created.getTotal().unscaledValue().toByteArray();
+                    ByteBuffer buffer = ByteBuffer.allocate(1 + 2 * ID_BYTES + 2 + unscaled.length + TIMESTAMP_BYTES);
+                    buffer.put(VERSION);
+                    buffer.putLong(created.getOrderId());
+                    buffer.putLong(created.getUserId());
+                    buffer.put(toByte(created.getTotal().scale()));
+                    buffer.put(toByte(unscaled.length));
+                    buffer.put(unscaled);
+                    putTimestamp(buffer, created.getTimestamp());
+                    yield buffer.array();
+                }
+                case ORDER_COMPLETED -> {
+                    OrderCompletedEvent completed = (OrderCompletedEvent) event;
+                    yield encodeOrderIdAndTimestamp(completed.getOrderId(), completed.getTimestamp());
+                }
+                case ORDER_EXPIRED -> {
+                    OrderExpiredEvent expired = (OrderExpiredEvent) event;
+                    yield encodeOrderIdAndTimestamp(expired.getOrderId(), expired.getTimestamp());
+                }
+                case PAYMENT_RETRY -> {
+                    PaymentRetryEvent retry = (PaymentRetryEvent) event;
+                    ByteBuffer buffer = ByteBuffer.allocate(1 + ID_BYTES + 1 + TIMESTAMP_BYTES);
+                    buffer.put(VERSION);
+                    buffer.putLong(retry.getOrderId());
+                    buffer.put(toByte(retry.getAttempt()));
+                    putTimestamp(buffer, retry.getTimestamp());
+                    yield buffer.array();
+                }
+                case ORDER_STATUS_CHANGED -> {
+                    OrderStatusChangedEvent changed = (OrderStatusChangedEvent) event;
+                    byte[] status = changed.getStatus().name().getBytes(StandardCharsets.US_ASCII);
+                    ByteBuffer buffer = ByteBuffer.allocate(1 + ID_BYTES + 1 + status.length + TIMESTAMP_BYTES);
+                    buffer.put(VERSION);
+                    buffer.putLong(changed.getOrderId());
+                    buffer.put(toByte(status.length));
+                    buffer.put(status);
+                    putTimestamp(buffer, changed.getUpdatedAt());
+                    yield buffer.array();
+                }
+            };
+        } catch (ClassCastException | NullPointerException e) {
+            throw new SerializationException("Could not encode " + type + " event " + event, e);
+        }
+    }
+
+    public static Object decode(OrderEventType type, byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported " + type + " event version " + version);
+            }
+            Object event = switch (type) {
+                case ORDER_CREATED -> {
+                    long orderId = buffer.getLong();
+                    long userId = buffer.getLong();
+                    int scale = buffer.get();
+                    byte[] unscaled = new byte[buffer.get()];
+                    buffer.get(unscaled);
+                    BigDecimal total = new BigDecimal(new BigInteger(unscaled), scale);
+                    yield new OrderCreatedEvent(orderId, userId, total, getTimestamp(buffer));
+                }
+                case ORDER_COMPLETED -> new OrderCompletedEvent(buffer.getLong(), getTimestamp(buffer));
+                case ORDER_EXPIRED -> new OrderExpiredEvent(buffer.getLong(), getTimestamp(buffer));
+                case PAYMENT_RETRY -> new PaymentRetryEvent(buffer.getLong(), buffer.get(), getTimestamp(buffer));
+                case ORDER_STATUS_CHANGED -> {
+                    long orderId = buffer.getLong();
+                    byte[] status = new byte[buffer.get()];
+                    buffer.get(status);
+                    yield new OrderStatusChangedEvent(orderId, toStatus(status), getTimestamp(buffer));
+                }
+            };
+            if (buffer.hasRemaining()) {
+                throw new SerializationException(buffer.remaining() + " unexpected trailing bytes in " + type + " event");
+            }
+            return event;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new SerializationException("Truncated " + type + " event", e);
+        }
+    }
+
+    private static byte[] encodeOrderIdAndTimestamp(Long orderId, LocalDateTime timestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + ID_BYTES + TIMESTAMP_BYTES);
+        buffer.put(VERSION);
+        buffer.putLong(orderId);
+        putTimestamp(buffer, timestamp);
+        return buffer.array();
+    }
+
+    private static void putTimestamp(ByteBuffer buffer, LocalDateTime timestamp) {
+        buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(timestamp.getNano());
+    }
+
+    private static LocalDateTime getTimestamp(ByteBuffer buffer) {
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    private static OrderStatus toStatus(byte[] name) {
+        try {
+            return OrderStatus.valueOf(new String(name, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Unknown order status in binary order event", e);
+        }
+    }
+
+    private static byte toByte(int value) {
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new SerializationException("Value " + value + " does not fit the binary order event format");
+        }
+        return (byte) value;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ecommerce.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deserializes order events into their event class, chosen by the event type header, from JSON or
+ * from the {@link OrderEventCodec} binary format when the record is marked as such. Events of
+ * types the consumer does not accept (see {@link #ACCEPTED_TYPES_CONFIG}) are not parsed at all and
+ * come out as {@code null}, to be dropped by the skipped order event filter.
+ * <p>
+ * Records sent before events carried the type header are typed the way listeners used to tell them
+ * apart: by the class name in Spring's JSON type header, or by the {@code userId} only order-created
+ * events have. A headerless record whose type cannot be told fails to deserialize, so it is
+ * dead-lettered rather than dropped.
+ */
+public class OrderEventDeserializer implements Deserializer<Object> {
+
+    // Comma-separated OrderEventType names; all types when not set
+    public static final String ACCEPTED_TYPES_CONFIG = "order-events.accepted-types";
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+    private Set<OrderEventType> acceptedTypes = EnumSet.allOf(OrderEventType.class);
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object accepted = configs.get(ACCEPTED_TYPES_CONFIG);
+        if (accepted != null) {
+            acceptedTypes = EnumSet.noneOf(OrderEventType.class);
+            Arrays.stream(accepted.toString().split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .map(OrderEventType::valueOf)
+                    .forEach(acceptedTypes::add);
+        }
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        throw new SerializationException("Order events can only be read together with their " + OrderEventType.HEADER + " header");
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        OrderEventType type = typeOf(headers);
+        if (type == null) {
+            type = legacyTypeOf(topic, headers, data);
+        }
+        if (!acceptedTypes.contains(type)) {
+            return null;
+        }
+        if (isBinary(headers)) {
+            return OrderEventCodec.decode(type, data);
+        }
+        try {
+            return objectMapper.readValue(data, type.getEventClass());
+        } catch (IOException e) {
+            throw new SerializationException("Could not read " + type + " event from " + topic, e);
+        }
+    }
+
+    // The type of a record produced without the type header, by the JSON serializer of earlier releases
+    private OrderEventType legacyTypeOf(String topic, Headers headers, byte[] data) {
+        Header typeId = headers.lastHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        if (typeId != null) {
+            String className = new String(typeId.value(), StandardCharsets.UTF_8);
+            for (OrderEventType type : OrderEventType.values()) {
+                if (type.getEventClass().getName().equals(className)) {
+                    return type;
+                }
+            }
+        }
+        try {
+            JsonNode payload = objectMapper.readTree(data);
+            if (payload != null && payload.has("userId")) {
+                return OrderEventType.ORDER_CREATED;
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Could not read order event without an " + OrderEventType.HEADER + " header from " + topic, e);
+        }
+        throw new SerializationException("Order event on " + topic + " has no " + OrderEventType.HEADER + " header and an unknown payload");
+    }
+
+    public static boolean isBinary(Headers headers) {
+        Header header = headers.lastHeader(OrderEventCodec.FORMAT_HEADER);
+        return header != null && OrderEventCodec.BINARY_FORMAT.equals(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    public static OrderEventType typeOf(Headers headers) {
+        Header header = headers.lastHeader(OrderEventType.HEADER);
+        if (header == null) {
+            return null;
+        }
+        return OrderEventType.fromHeaderValue(new String(header.value(), StandardCharsets.UTF_8)).orElse(null);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.ecommerce.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.JacksonUtils;
+
+/**
+ * Counterpart of {@link OrderEventDeserializer} for records that are sent again, such as dead
+ * letters: raw payloads are passed through unchanged, and events that were already deserialized
+ * are written back in the format their headers name, so the record stays readable by consumers.
+ */
+public class OrderEventSerializer implements Serializer<Object> {
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        throw new SerializationException("Order events can only be written together with their " + OrderEventType.HEADER + " header");
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null || data instanceof byte[]) {
+            return (byte[]) data;
+        }
+        OrderEventType type = OrderEventDeserializer.typeOf(headers);
+        if (type == null || !type.getEventClass().isInstance(data)) {
+            throw new SerializationException("Cannot write " + data.getClass().getSimpleName() + " as an order event of type " + type);
+        }
+        if (OrderEventDeserializer.isBinary(headers)) {
+            return OrderEventCodec.encode(type, data);
+        }
+        try {
+            return objectMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Could not write " + type + " event to " + topic, e);
+        }
+    }
+}
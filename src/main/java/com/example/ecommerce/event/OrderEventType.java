@@ -0,0 +1,37 @@
+package com.example.ecommerce.event;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Types of events on the order-events topic and its payment retry topics, sent in the {@value #HEADER}
+ * header. The header value is the event class name, which is also what the outbox stores as the event type.
+ * Status changes go to their own compacted topic instead (see {@code OrderStatusStore}).
+ */
+@Getter
+public enum OrderEventType {
+
+    ORDER_CREATED(OrderCreatedEvent.class),
+    ORDER_COMPLETED(OrderCompletedEvent.class),
+    ORDER_EXPIRED(OrderExpiredEvent.class),
+    PAYMENT_RETRY(PaymentRetryEvent.class),
+    ORDER_STATUS_CHANGED(OrderStatusChangedEvent.class);
+
+    public static final String HEADER = "eventType";
+
+    private final Class<?> eventClass;
+    private final String headerValue;
+
+    OrderEventType(Class<?> eventClass) {
+        this.eventClass = eventClass;
+        this.headerValue = eventClass.getSimpleName();
+    }
+
+    public static Optional<OrderEventType> fromHeaderValue(String headerValue) {
+        return Arrays.stream(values())
+                .filter(type -> type.headerValue.equals(headerValue))
+                .findFirst();
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.ecommerce.event;
+
+import com.example.ecommerce.entity.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusChangedEvent {
+    private Long orderId;
+    private OrderStatus status;
+    private LocalDateTime updatedAt;
+}
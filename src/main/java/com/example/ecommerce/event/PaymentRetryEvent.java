@@ -0,0 +1,17 @@
+package com.example.ecommerce.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A failed payment to be tried again; attempt counts the retries, starting at 1, and the timestamp is when the previous attempt failed
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentRetryEvent {
+    private Long orderId;
+    private int attempt;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,15 @@
+package com.example.ecommerce.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductChangedEvent {
+    private Long productId;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,156 @@
+package com.example.ecommerce.event.bus;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A fixed ring of preallocated entries that events are copied into, read by any number of subscribers.
+ * Every subscriber sees every event, in publish order, on its own thread, and is handed all events
+ * published since its last batch (up to its batch size) at once. An entry is only reused once every
+ * subscriber is past it, so a full ring makes {@link #publish} wait for the slowest subscriber instead
+ * of dropping events or growing.
+ * <p>
+ * Subscribe before the first publish; a subscriber starts at the events published after it subscribed.
+ * Handlers must not keep the entries they are handed, which are overwritten once the batch returns.
+ */
+@Slf4j
+public class RingBuffer<E> implements AutoCloseable {
+
+    private static final long FULL_PARK_NANOS = 1_000;
+
+    private final Object[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private long lastClaimed = -1;
+
+    public RingBuffer(int size, Supplier<E> entryFactory, WaitStrategy waitStrategy) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of two: " + size);
+        }
+        this.entries = new Object[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = entryFactory.get();
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    // Handles batches of at most maxBatch entries on a thread of the given name; exceptions are logged and skipped
+    public void subscribe(String name, int maxBatch, Consumer<List<E>> handler) {
+        Subscriber subscriber = new Subscriber(name, maxBatch, handler);
+        subscriber.sequence.set(cursor.get());
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+    }
+
+    // Fills the next entry, given with its sequence number, in place and makes it visible to the subscribers,
+    // waiting while the ring is full
+    public synchronized void publish(ObjLongConsumer<E> translator) throws InterruptedException {
+        long sequence = lastClaimed + 1;
+        while (sequence - entries.length > slowestSequence()) {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        translator.accept(entryAt(sequence), sequence);
+        lastClaimed = sequence;
+        cursor.set(sequence);
+        waitStrategy.signalAll();
+    }
+
+    public int getSize() {
+        return entries.length;
+    }
+
+    // Events published but not yet handled by every subscriber
+    public long getBacklog() {
+        return cursor.get() - slowestSequence();
+    }
+
+    // Lets the subscribers catch up for up to the timeout, then stops them
+    public void close(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (getBacklog() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.thread.interrupt();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        close(30_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E entryAt(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    private long slowestSequence() {
+        long slowest = cursor.get();
+        for (Subscriber subscriber : subscribers) {
+            slowest = Math.min(slowest, subscriber.sequence.get());
+        }
+        return slowest;
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final String name;
+        private final int maxBatch;
+        private final Consumer<List<E>> handler;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final Thread thread;
+
+        private Subscriber(String name, int maxBatch, Consumer<List<E>> handler) {
+            this.name = name;
+            this.maxBatch = maxBatch;
+            this.handler = handler;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<E> batch = new ArrayList<>(maxBatch);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long next = sequence.get() + 1;
+                    long last = Math.min(waitStrategy.waitFor(next, cursor), next + maxBatch - 1);
+                    batch.clear();
+                    for (long s = next; s <= last; s++) {
+                        batch.add(entryAt(s));
+                    }
+                    try {
+                        handler.accept(batch);
+                    } catch (RuntimeException e) {
+                        log.error("Subscriber {} failed on events {} to {}, skipping them", name, next, last, e);
+                    }
+                    // Only now may the publisher reuse the entries
+                    sequence.set(last);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.debug("Subscriber {} stopped at event {}", name, sequence.get());
+        }
+    }
+}
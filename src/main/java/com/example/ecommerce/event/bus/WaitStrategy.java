@@ -0,0 +1,129 @@
+package com.example.ecommerce.event.bus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How a {@link RingBuffer} subscriber waits for the next event. The strategies trade latency for CPU:
+ * {@code blocking} sleeps on a condition the publisher signals, {@code sleeping} parks briefly between
+ * checks, {@code yielding} spins and then yields its core, and {@code busy-spin} never lets go of it.
+ */
+public interface WaitStrategy {
+
+    // Returns the highest published sequence once it is at least sequence
+    long waitFor(long sequence, AtomicLong cursor) throws InterruptedException;
+
+    // Called by the publisher after each publish
+    void signalAll();
+
+    static WaitStrategy of(String name) {
+        return switch (name.toLowerCase()) {
+            case "blocking" -> new Blocking();
+            case "sleeping" -> new Sleeping();
+            case "yielding" -> new Yielding();
+            case "busy-spin" -> new BusySpin();
+            default -> throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        };
+    }
+
+    final class Blocking implements WaitStrategy {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available = cursor.get();
+            if (available >= sequence) {
+                return available;
+            }
+            lock.lockInterruptibly();
+            try {
+                while ((available = cursor.get()) < sequence) {
+                    published.await();
+                }
+                return available;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class Sleeping implements WaitStrategy {
+
+        private static final long PARK_NANOS = 100_000;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            while ((available = cursor.get()) < sequence) {
+                LockSupport.parkNanos(PARK_NANOS);
+                checkInterrupted();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            int tries = 0;
+            while ((available = cursor.get()) < sequence) {
+                if (++tries > SPIN_TRIES) {
+                    Thread.yield();
+                    checkInterrupted();
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor) throws InterruptedException {
+            long available;
+            while ((available = cursor.get()) < sequence) {
+                Thread.onSpinWait();
+                checkInterrupted();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.ecommerce.event.spill;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records in fixed-size, memory-mapped segment files. Appends are written into
+ * the newest segment's mapping and reach the disk on {@link #force}; a record that does not fit in the
+ * rest of a segment starts the next one. Records are read back from a checkpointed position, and a
+ * segment is deleted once the checkpoint has moved past it.
+ * <p>
+ * Each record is its length, the CRC32 of its data and the data; a zero length ends a segment's data.
+ * On reopening, the log continues at the checkpoint and ends at the first record that was cut short
+ * by a crash. One thread may append while another reads.
+ */
+@Slf4j
+public class SpillLog {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+
+    public record Position(long segment, int offset) {
+    }
+
+    // Records read and the position after the last of them, to pass to advance once they were handled
+    public record Batch(List<byte[]> records, Position next) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private volatile Position readPosition;
+    private volatile Position writePosition;
+
+    // Appending thread only
+    private boolean unforced;
+
+    public SpillLog(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        // Nothing is created on disk until the first append
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                    segments.put(segmentIdOf(file), map(file));
+                }
+            }
+        }
+        Position checkpoint = readCheckpoint();
+        if (checkpoint != null && segments.containsKey(checkpoint.segment())) {
+            readPosition = checkpoint;
+            deleteSegmentsBefore(checkpoint.segment());
+        } else {
+            readPosition = new Position(segments.isEmpty() ? 0 : segments.firstKey(), 0);
+        }
+        writePosition = recoverEnd(readPosition);
+        if (!isEmpty()) {
+            log.info("Reopened spill log in {} with records from {} to {}", directory, readPosition, writePosition);
+        }
+    }
+
+    public boolean isEmpty() {
+        return readPosition.equals(writePosition);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public void append(byte[] data) throws IOException {
+        int recordSize = HEADER_SIZE + data.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Record of " + data.length + " bytes does not fit in a segment");
+        }
+        Position end = writePosition;
+        MappedByteBuffer segment = segments.get(end.segment());
+        long segmentId = end.segment();
+        int offset = end.offset();
+        if (segment == null || offset + recordSize > segmentSize) {
+            if (segment != null) {
+                // The full segment is done; the remaining space stays zero, which ends its data
+                segment.force();
+                segmentId++;
+            }
+            segment = createSegment(segmentId);
+            offset = 0;
+        }
+
+        ByteBuffer view = segment.duplicate();
+        view.position(offset + HEADER_SIZE);
+        view.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        view.putInt(offset + 4, (int) crc.getValue());
+        // Clears what an earlier, torn write may have left after this record
+        if (offset + recordSize + HEADER_SIZE <= segmentSize) {
+            view.putInt(offset + recordSize, 0);
+        }
+        // The length goes in last, so a record is only complete once it is set
+        view.putInt(offset, data.length);
+        writePosition = new Position(segmentId, offset + recordSize);
+        unforced = true;
+    }
+
+    // Writes appended records to disk; only then may their source be discarded
+    public void force() {
+        if (unforced) {
+            MappedByteBuffer segment = segments.get(writePosition.segment());
+            if (segment != null) {
+                segment.force();
+            }
+            unforced = false;
+        }
+    }
+
+    // Reads up to max records from the checkpoint on, without moving it. The batch can be empty short of the end of
+    // the log, such as when only segment ends are left; advancing to its position then skips them
+    public Batch read(int max) {
+        Position position = readPosition;
+        Position end = writePosition;
+        List<byte[]> records = new ArrayList<>();
+        while (records.size() < max && !position.equals(end)) {
+            MappedByteBuffer segment = segments.get(position.segment());
+            if (segment == null) {
+                // Nothing past a missing segment can be read, so the batch ends the log
+                position = end;
+                break;
+            }
+            int offset = position.offset();
+            int length = offset + HEADER_SIZE > segmentSize ? 0 : segment.getInt(offset);
+            if (length == 0) {
+                position = new Position(position.segment() + 1, 0);
+                continue;
+            }
+            byte[] data = new byte[length];
+            segment.get(offset + HEADER_SIZE, data);
+            records.add(data);
+            position = new Position(position.segment(), offset + HEADER_SIZE + length);
+        }
+        return new Batch(records, position);
+    }
+
+    // Moves the checkpoint to a position returned by read, deleting the segments it has left behind
+    public void advance(Position position) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer checkpoint = ByteBuffer.allocate(12).putLong(position.segment()).putInt(position.offset());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(checkpoint.flip());
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        readPosition = position;
+        deleteSegmentsBefore(position.segment());
+    }
+
+    private Position recoverEnd(Position from) {
+        long segmentId = from.segment();
+        int offset = from.offset();
+        while (segments.containsKey(segmentId)) {
+            MappedByteBuffer segment = segments.get(segmentId);
+            int length = offset + HEADER_SIZE > segmentSize ? 0 : segment.getInt(offset);
+            if (length == 0 || !isIntact(segment, offset, length)) {
+                if (length == 0 && segments.containsKey(segmentId + 1)) {
+                    segmentId++;
+                    offset = 0;
+                    continue;
+                }
+                if (length != 0) {
+                    log.warn("Spill log {} ends in a torn record at {}@{}", directory, segmentId, offset);
+                }
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return new Position(segmentId, offset);
+    }
+
+    private boolean isIntact(MappedByteBuffer segment, int offset, int length) {
+        if (length < 0 || offset + HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+        byte[] data = new byte[length];
+        segment.get(offset + HEADER_SIZE, data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return segment.getInt(offset + 4) == (int) crc.getValue();
+    }
+
+    private MappedByteBuffer createSegment(long id) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            segments.put(id, segment);
+            return segment;
+        }
+    }
+
+    // The mapping stays valid after the channel is closed
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    // A deleted segment's space is freed once its mapping is garbage collected
+    private void deleteSegmentsBefore(long segmentId) throws IOException {
+        for (Long id : List.copyOf(segments.headMap(segmentId).keySet())) {
+            segments.remove(id);
+            Files.deleteIfExists(directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX)));
+        }
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(file));
+        return checkpoint.remaining() == 12 ? new Position(checkpoint.getLong(), checkpoint.getInt()) : null;
+    }
+
+    private static long segmentIdOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -29,6 +29,24 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<ErrorMessageDTO> handleInvalidRequestException(InvalidRequestException ex) {
+        ErrorMessageDTO error = new ErrorMessageDTO(ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InsufficientStockException.class)
+    public ResponseEntity<ErrorMessageDTO> handleInsufficientStockException(InsufficientStockException ex) {
+        ErrorMessageDTO error = new ErrorMessageDTO(ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(ReplayInProgressException.class)
+    public ResponseEntity<ErrorMessageDTO> handleReplayInProgressException(ReplayInProgressException ex) {
+        ErrorMessageDTO error = new ErrorMessageDTO(ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(UnauthorizedException.class)
     public ResponseEntity<ErrorMessageDTO> handleUnauthorizedException(UnauthorizedException ex) {
         ErrorMessageDTO error = new ErrorMessageDTO(ex.getMessage());
@@ -0,0 +1,7 @@
+package com.example.ecommerce.exception;
+
+public class ReplayInProgressException extends RuntimeException {
+    public ReplayInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.ecommerce.repository;
+
+import com.example.ecommerce.entity.Notification;
+
+import java.util.List;
+
+public interface NotificationRepositoryCustom {
+
+    // Stores the notifications in one JDBC batch, skipping any whose order already has one of that type
+    void insertIgnoringDuplicates(List<Notification> notifications);
+}
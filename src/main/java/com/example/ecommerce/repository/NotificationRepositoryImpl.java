@@ -0,0 +1,59 @@
+package com.example.ecommerce.repository;
+
+import com.example.ecommerce.entity.Notification;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RequiredArgsConstructor
+class NotificationRepositoryImpl implements NotificationRepositoryCustom {
+
+    // A duplicate hits the (order_id, type) unique constraint and is dropped without failing the batch
+    private static final String INSERT_IGNORING_DUPLICATES =
+            "insert into notifications (id, order_id, type, message, created_at) " +
+            "values (?, ?, ?, ?, ?) on conflict do nothing";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void insertIgnoringDuplicates(List<Notification> notifications) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator idGenerator = (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(Notification.class).getGenerator();
+        // From the same pooled-lo blocks as notifications saved through JPA, so both paths share the sequence's ranges
+        long[] ids = new long[notifications.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (Long) idGenerator.generate(session, notifications.get(i), null, EventType.INSERT);
+        }
+        jdbcTemplate.batchUpdate(INSERT_IGNORING_DUPLICATES, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                Notification notification = notifications.get(i);
+                statement.setLong(1, ids[i]);
+                statement.setLong(2, notification.getOrderId());
+                statement.setString(3, notification.getType());
+                statement.setString(4, notification.getMessage());
+                statement.setTimestamp(5, notification.getCreatedAt() != null ? Timestamp.valueOf(notification.getCreatedAt()) : createdAt);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.length;
+            }
+        });
+    }
+}
@@ -1,9 +1,20 @@
 package com.example.ecommerce.repository;
 
+import com.example.ecommerce.dto.order.OrderItemRowDTO;
 import com.example.ecommerce.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+
+    @Query("select new com.example.ecommerce.dto.order.OrderItemRowDTO("
+            + "i.order.id, i.id, p.id, p.name, i.quantity, i.price) "
+            + "from OrderItem i join i.product p "
+            + "where i.order.id in :orderIds order by i.order.id, i.id")
+    List<OrderItemRowDTO> findRowsByOrderIdIn(Collection<Long> orderIds);
 }
@@ -1,17 +1,82 @@
 package com.example.ecommerce.repository;
 
+import com.example.ecommerce.dto.order.OrderResponseDTO;
+import com.example.ecommerce.dto.order.OrderStatusDTO;
 import com.example.ecommerce.entity.Order;
 import com.example.ecommerce.entity.OrderStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
 
-    List<Order> findByUserId(Long userId);
+    // Read path: order rows are projected straight into DTOs, items are attached with one
+    // OrderItemRepository.findRowsByOrderIdIn call per page
+
+    @Query("select new com.example.ecommerce.dto.order.OrderResponseDTO("
+            + "o.id, o.user.id, o.total, o.status, o.createdAt, o.updatedAt) "
+            + "from Order o where o.id = :id")
+    Optional<OrderResponseDTO> findSummaryById(Long id);
+
+    @Query("select new com.example.ecommerce.dto.order.OrderResponseDTO("
+            + "o.id, o.user.id, o.total, o.status, o.createdAt, o.updatedAt) "
+            + "from Order o where o.id > :afterId order by o.id")
+    List<OrderResponseDTO> findSummariesAfter(Long afterId, Limit limit);
+
+    @Query("select new com.example.ecommerce.dto.order.OrderResponseDTO("
+            + "o.id, o.user.id, o.total, o.status, o.createdAt, o.updatedAt) "
+            + "from Order o where o.user.id = :userId and o.id > :afterId order by o.id")
+    List<OrderResponseDTO> findSummariesByUserIdAfter(Long userId, Long afterId, Limit limit);
+
+    // Status polls the local status store cannot answer
+    @Query("select new com.example.ecommerce.dto.order.OrderStatusDTO(o.id, o.status, o.updatedAt) "
+            + "from Order o where o.id = :id")
+    Optional<OrderStatusDTO> findStatusById(Long id);
+
+    // Forward-only cursor for exports: rows are fetched from the server in batches instead of all at once
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select new com.example.ecommerce.dto.order.OrderResponseDTO("
+            + "o.id, o.user.id, o.total, o.status, o.createdAt, o.updatedAt) "
+            + "from Order o order by o.id")
+    Stream<OrderResponseDTO> streamSummariesForExport();
+
+    // Write path: loads the order together with its items and their products in one statement
+    @EntityGraph(attributePaths = {"items", "items.product"})
+    @Query("select o from Order o where o.id = :id")
+    Optional<Order> findWithItemsById(Long id);
+
+    boolean existsByIdAndStatus(Long id, OrderStatus status);
 
     List<Order> findByStatusAndUpdatedAtBefore(OrderStatus status, LocalDateTime dateTime);
+
+    // Guarded status change: returns 0 when the order is gone or no longer in the expected status
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :to, o.updatedAt = :now where o.id = :id and o.status = :from")
+    int updateStatus(Long id, OrderStatus from, OrderStatus to, LocalDateTime now);
+
+    // Locks those of the orders that are in the given status, in id order so concurrent batches cannot deadlock;
+    // a set-based update of the returned ids then changes exactly these orders
+    @Query(value = "select id from orders where id in (:ids) and status = :status order by id for update", nativeQuery = true)
+    List<Long> lockIdsInStatus(Collection<Long> ids, String status);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :to, o.updatedAt = :now where o.id in :ids and o.status = :from")
+    int updateStatusByIdIn(Collection<Long> ids, OrderStatus from, OrderStatus to, LocalDateTime now);
 }
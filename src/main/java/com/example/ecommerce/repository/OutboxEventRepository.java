@@ -0,0 +1,22 @@
+package com.example.ecommerce.repository;
+
+import com.example.ecommerce.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Oldest pending events; rows locked by another relay are skipped instead of waited for
+    @Query(value = "select * from outbox_events order by id limit :limit for update skip locked", nativeQuery = true)
+    List<OutboxEvent> lockOldest(int limit);
+
+    @Modifying
+    @Query("delete from OutboxEvent e where e.id in :ids")
+    int deleteByIdIn(Collection<Long> ids);
+}
@@ -1,9 +1,34 @@
 package com.example.ecommerce.repository;
 
 import com.example.ecommerce.entity.Product;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Product> findForUpdateById(Long id);
+
+    // Returns 0 instead of going negative when there is not enough stock
+    @Modifying
+    @Query("update Product p set p.stock = p.stock - :quantity where p.id = :id and p.stock >= :quantity")
+    int decrementStock(Long id, int quantity);
+
+    @Query("select p.stockShards from Product p where p.id = :id")
+    Optional<Integer> findStockShardsById(Long id);
+
+    @Modifying
+    @Query("update Product p set p.stock = p.stock + :quantity where p.id = :id")
+    int incrementStock(Long id, int quantity);
 }
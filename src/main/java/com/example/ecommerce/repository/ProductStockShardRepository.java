@@ -0,0 +1,41 @@
+package com.example.ecommerce.repository;
+
+import com.example.ecommerce.dto.product.ProductStockDTO;
+import com.example.ecommerce.entity.ProductStockShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductStockShardRepository extends JpaRepository<ProductStockShard, Long> {
+
+    // Returns 0 instead of going negative when the shard does not hold enough stock
+    @Modifying
+    @Query("update ProductStockShard s set s.stock = s.stock - :quantity " +
+            "where s.product.id = :productId and s.shard = :shard and s.stock >= :quantity")
+    int decrementStock(Long productId, int shard, int quantity);
+
+    @Modifying
+    @Query("update ProductStockShard s set s.stock = s.stock + :quantity where s.product.id = :productId and s.shard = :shard")
+    int incrementStock(Long productId, int shard, int quantity);
+
+    // Locks every shard of the product; element i is the stock of shard i
+    @Query(value = "select stock from product_stock_shards where product_id = :productId order by shard for update",
+            nativeQuery = true)
+    List<Integer> lockStockByShard(Long productId);
+
+    @Query("select coalesce(sum(s.stock), 0) from ProductStockShard s where s.product.id = :productId")
+    long sumStock(Long productId);
+
+    @Query("select new com.example.ecommerce.dto.product.ProductStockDTO(s.product.id, sum(s.stock)) " +
+            "from ProductStockShard s where s.product.id in :productIds group by s.product.id")
+    List<ProductStockDTO> sumStockByProductIdIn(Collection<Long> productIds);
+
+    @Modifying
+    @Query("delete from ProductStockShard s where s.product.id = :productId")
+    void deleteByProductId(Long productId);
+}
@@ -0,0 +1,236 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.backpressure.ConsumerBackpressureStatsDTO;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds back the order and notification consumers while the database pool is saturated, so HTTP
+ * requests keep getting connections. Every interval it reads the active and pending connections from
+ * the pool's MXBean and looks at how much consumer work is still in flight; when it could install its
+ * metrics tracker on the pool, it also sees how long connections took to acquire and which requests
+ * timed out. Under pressure both listener containers are paused: their consumers keep polling, so the
+ * group does not rebalance, but no records are returned. They are resumed once the pool has stayed calm
+ * for a few checks in a row and the work they already started has drained. Whether they are paused, and
+ * how often they were, is published as {@value #PAUSED_METER} and {@value #PAUSES_METER}.
+ */
+@Component
+@Slf4j
+public class ConsumerBackpressure {
+
+    public static final List<String> LISTENER_IDS = List.of(OrderEventConsumer.LISTENER_ID, NotificationService.LISTENER_ID);
+    public static final String PAUSED_METER = "consumer.backpressure.paused";
+    public static final String PAUSES_METER = "consumer.backpressure.pauses";
+
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final OrderEventConsumer orderEventConsumer;
+    private final PaymentProcessor paymentProcessor;
+    private final HikariDataSource pool;
+    private final boolean enabled;
+    private final boolean tracking;
+    private final Counter pauses;
+    private final double pauseWaitMs;
+    private final int pauseAwaitingConnection;
+    private final double resumeWaitMs;
+    private final int resumeInFlight;
+    private final int resumeCalmChecks;
+
+    // Connection acquisitions since the last check, from any thread
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    // Written by the scheduler thread only
+    private volatile boolean paused;
+    private volatile long pausedAt;
+    private volatile long pauseCount;
+    private volatile long pausedMillis;
+    private volatile long connectionTimeouts;
+    private volatile double averageWaitMs;
+    private volatile int threadsAwaitingConnection;
+    private volatile int activeConnections;
+    private volatile int totalConnections;
+    private volatile int consumerInFlight;
+    private int calmChecks;
+
+    public ConsumerBackpressure(KafkaListenerEndpointRegistry listenerRegistry,
+                                OrderEventConsumer orderEventConsumer,
+                                PaymentProcessor paymentProcessor,
+                                DataSource dataSource,
+                                ObjectProvider<MeterRegistry> meterRegistry,
+                                @Value("${consumer-backpressure.enabled:true}") boolean enabled,
+                                @Value("${consumer-backpressure.pause.wait-ms:50}") double pauseWaitMs,
+                                @Value("${consumer-backpressure.pause.awaiting-connection:2}") int pauseAwaitingConnection,
+                                @Value("${consumer-backpressure.resume.wait-ms:5}") double resumeWaitMs,
+                                @Value("${consumer-backpressure.resume.in-flight:1000}") int resumeInFlight,
+                                @Value("${consumer-backpressure.resume.calm-checks:4}") int resumeCalmChecks) {
+        this.listenerRegistry = listenerRegistry;
+        this.orderEventConsumer = orderEventConsumer;
+        this.paymentProcessor = paymentProcessor;
+        this.pool = hikariOf(dataSource);
+        this.enabled = enabled && pool != null;
+        this.pauseWaitMs = pauseWaitMs;
+        this.pauseAwaitingConnection = pauseAwaitingConnection;
+        this.resumeWaitMs = resumeWaitMs;
+        this.resumeInFlight = resumeInFlight;
+        this.resumeCalmChecks = resumeCalmChecks;
+
+        if (enabled && pool == null) {
+            log.warn("Consumer backpressure is off: the data source is not a Hikari pool");
+        }
+        this.tracking = this.enabled && trackAcquisitions();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        for (String listenerId : LISTENER_IDS) {
+            Gauge.builder(PAUSED_METER, this, backpressure -> backpressure.paused ? 1 : 0)
+                    .description("Whether the listener container is paused because the database pool is saturated")
+                    .tag("listener", listenerId)
+                    .register(registry);
+        }
+        this.pauses = Counter.builder(PAUSES_METER)
+                .description("Times the order and notification consumers were paused for the database pool")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${consumer-backpressure.interval-ms:250}")
+    public void check() {
+        if (!enabled) {
+            return;
+        }
+        HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+        if (poolBean == null) {
+            return;
+        }
+        long count = acquisitions.sumThenReset();
+        long nanos = acquireNanos.sumThenReset();
+        long timedOut = timeouts.sumThenReset();
+        averageWaitMs = count == 0 ? 0 : nanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+        connectionTimeouts += timedOut;
+        threadsAwaitingConnection = poolBean.getThreadsAwaitingConnection();
+        activeConnections = poolBean.getActiveConnections();
+        totalConnections = poolBean.getTotalConnections();
+        // Order-created events on the workers plus payments that still have to settle, each a database write to come
+        consumerInFlight = orderEventConsumer.getInFlight() + paymentProcessor.getInFlight();
+
+        // Every connection taken and requests queued for one, which is pressure with or without the tracker's wait times
+        boolean exhausted = activeConnections >= pool.getMaximumPoolSize() && threadsAwaitingConnection > 0;
+        boolean pressure = exhausted || timedOut > 0 || averageWaitMs >= pauseWaitMs || threadsAwaitingConnection >= pauseAwaitingConnection;
+        if (!paused) {
+            if (pressure) {
+                pause();
+            }
+            return;
+        }
+        boolean calm = !pressure && averageWaitMs <= resumeWaitMs && threadsAwaitingConnection == 0 && consumerInFlight <= resumeInFlight;
+        calmChecks = calm ? calmChecks + 1 : 0;
+        if (calmChecks >= resumeCalmChecks) {
+            resume();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public ConsumerBackpressureStatsDTO stats() {
+        long pausedTotal = pausedMillis;
+        if (paused) {
+            pausedTotal += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt);
+        }
+        return new ConsumerBackpressureStatsDTO(
+                enabled,
+                tracking,
+                paused,
+                pauseCount,
+                pausedTotal,
+                averageWaitMs,
+                threadsAwaitingConnection,
+                activeConnections,
+                totalConnections,
+                pool == null ? 0 : pool.getMaximumPoolSize(),
+                connectionTimeouts,
+                consumerInFlight
+        );
+    }
+
+    private void pause() {
+        paused = true;
+        pausedAt = System.nanoTime();
+        pauseCount++;
+        pauses.increment();
+        calmChecks = 0;
+        containers().forEach(MessageListenerContainer::pause);
+        log.warn("Database pool saturated ({} ms average wait, {} threads waiting, {}/{} connections active), pausing {}",
+                String.format("%.1f", averageWaitMs), threadsAwaitingConnection, activeConnections, totalConnections, LISTENER_IDS);
+    }
+
+    private void resume() {
+        containers().forEach(MessageListenerContainer::resume);
+        pausedMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt);
+        paused = false;
+        calmChecks = 0;
+        log.info("Database pool recovered, resuming {}", LISTENER_IDS);
+    }
+
+    private List<MessageListenerContainer> containers() {
+        return LISTENER_IDS.stream()
+                .map(listenerRegistry::getListenerContainer)
+                .filter(container -> container != null)
+                .toList();
+    }
+
+    // Hikari reports every acquisition's wait to its metrics tracker; the pool bean only has current counts.
+    // A pool has one tracker, so without it the checks go by the pool bean alone
+    private boolean trackAcquisitions() {
+        if (pool.getMetricsTrackerFactory() != null || pool.getMetricRegistry() != null) {
+            log.warn("Hikari already reports to another metrics tracker, consumer backpressure goes by active and pending connections only");
+            return false;
+        }
+        IMetricsTracker tracker = new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+        try {
+            pool.setMetricsTrackerFactory((poolName, poolStats) -> tracker);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Could not attach the consumer backpressure tracker to Hikari, going by active and pending connections only: {}",
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    private static HikariDataSource hikariOf(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.CursorPageDTO;
+import com.example.ecommerce.exception.InvalidRequestException;
+import org.springframework.data.domain.Limit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination helpers. Pages are ordered by id and the cursor is an opaque
+ * encoding of the last id returned, so every page is an index range scan
+ * ({@code WHERE id > ? ORDER BY id LIMIT ?}) no matter how deep the client pages.
+ */
+final class CursorPagination {
+
+    static final int DEFAULT_LIMIT = 50;
+    static final int MAX_LIMIT = 500;
+
+    private static final String PREFIX = "id:";
+
+    private CursorPagination() {
+    }
+
+    static long decodeAfter(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(PREFIX)) {
+                throw new InvalidRequestException("Invalid cursor: " + cursor);
+            }
+            return Long.parseLong(decoded.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    static String encode(Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int normalizeLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    // One extra row is fetched to know whether another page exists without a count query
+    static Limit probe(int limit) {
+        return Limit.of(limit + 1);
+    }
+
+    static <E, D> CursorPageDTO<D> toPage(List<E> rows, int limit, Function<E, Long> idOf, Function<E, D> mapper) {
+        boolean hasMore = rows.size() > limit;
+        List<E> pageRows = hasMore ? rows.subList(0, limit) : rows;
+        List<D> items = pageRows.stream().map(mapper).toList();
+        String nextCursor = hasMore ? encode(idOf.apply(pageRows.get(limit - 1))) : null;
+        return new CursorPageDTO<>(items, nextCursor);
+    }
+}
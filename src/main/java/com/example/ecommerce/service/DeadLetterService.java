@@ -0,0 +1,293 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayRequestDTO;
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayResultDTO;
+import com.example.ecommerce.event.OrderEventSerializer;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.ReplayInProgressException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dead letters of the order event topics. A record that could not be deserialized or processed is
+ * sent to {@value #TOPIC} with its original payload and headers plus Spring Kafka's dead-letter
+ * headers: original topic, partition, offset and timestamp, consumer group, and the exception's
+ * class, message and stack trace. {@link #replay} re-drives a filtered range of dead letters to
+ * their original topic at a bounded rate; consumers guard their state changes, so a record that is
+ * replayed twice does no harm. A replay runs on the caller's thread, so only one runs at a time per
+ * instance and its limit and rate must let it finish within {@code dead-letters.replay.max-duration}.
+ */
+@Service
+@Slf4j
+public class DeadLetterService {
+
+    public static final String TOPIC = OrderEventPublisher.TOPIC + "-dlt";
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(DeadLetterService.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final DeadLetterPublishingRecoverer recoverer;
+    private final Map<String, Object> replayConsumerConfig;
+    private final boolean enabled;
+    private final Duration maxReplayDuration;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    public DeadLetterService(ProducerFactory<?, ?> producerFactory,
+                             ConsumerFactory<?, ?> consumerFactory,
+                             @Value("${dead-letters.enabled:true}") boolean enabled,
+                             @Value("${dead-letters.replay.max-duration:5m}") Duration maxReplayDuration) {
+        // Dead letters keep their original bytes, or are written back in the format their headers name
+        Map<String, Object> producerConfig = new HashMap<>(producerFactory.getConfigurationProperties());
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, OrderEventSerializer.class);
+        this.producerFactory = new DefaultKafkaProducerFactory<>(producerConfig);
+        this.kafkaTemplate = new KafkaTemplate<>(this.producerFactory);
+        this.recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate, (record, exception) -> destinationOf(record));
+
+        // Replays read the dead letters as raw bytes and outside any consumer group, so nothing is committed
+        Map<String, Object> consumerConfig = new HashMap<>(consumerFactory.getConfigurationProperties());
+        consumerConfig.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerConfig.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerConfig.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        consumerConfig.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 2000);
+        this.replayConsumerConfig = consumerConfig;
+        this.enabled = enabled;
+        this.maxReplayDuration = maxReplayDuration;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        producerFactory.destroy();
+    }
+
+    // Recoverer for the listener containers' error handler
+    public DeadLetterPublishingRecoverer getRecoverer() {
+        return recoverer;
+    }
+
+    // For listeners that handle failures themselves, such as batch listeners; consumer may be null
+    public void deadLetter(ConsumerRecord<?, ?> record, Consumer<?, ?> consumer, Exception exception) {
+        if (!enabled) {
+            // Without a broker (in-process events) there is no dead-letter topic to keep the event in
+            log.error("Dropping failed order event at {}-{}@{}, dead letters are disabled: {}",
+                    record.topic(), record.partition(), record.offset(), exception.getMessage());
+            return;
+        }
+        recoverer.accept(record, consumer, exception);
+        log.warn("Dead-lettered order event at {}-{}@{}: {}", record.topic(), record.partition(), record.offset(), exception.getMessage());
+    }
+
+    // The deserialization failure of a record whose value came out null from the ErrorHandlingDeserializer
+    public static Exception deserializationFailureOf(ConsumerRecord<?, ?> record) {
+        Exception failure = SerializationUtils.getExceptionFromHeader(record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        return failure != null ? failure : new IllegalStateException("Order event without a readable payload");
+    }
+
+    public DeadLetterReplayResultDTO replay(DeadLetterReplayRequestDTO request) {
+        if (!enabled) {
+            throw new InvalidRequestException("Dead letters are disabled on this instance");
+        }
+        // At the requested rate, the first record goes out at once and every further one a rate interval later
+        long pacedSeconds = (request.getLimit() - 1L) / request.getRatePerSecond();
+        if (pacedSeconds > maxReplayDuration.toSeconds()) {
+            throw new InvalidRequestException("A replay of " + request.getLimit() + " records at " + request.getRatePerSecond()
+                    + "/s would take longer than " + maxReplayDuration.toSeconds() + "s; lower the limit or raise the rate");
+        }
+        if (!replaying.compareAndSet(false, true)) {
+            throw new ReplayInProgressException("A dead letter replay is already running");
+        }
+        try {
+            return doReplay(request);
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private DeadLetterReplayResultDTO doReplay(DeadLetterReplayRequestDTO request) {
+        long startedAt = System.nanoTime();
+        long nanosPerRecord = TimeUnit.SECONDS.toNanos(1) / request.getRatePerSecond();
+        int scanned = 0;
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+
+        try (Consumer<String, byte[]> consumer = new KafkaConsumer<>(replayConsumerConfig)) {
+            List<PartitionInfo> partitionInfos = consumer.partitionsFor(TOPIC);
+            List<TopicPartition> partitions = partitionInfos == null ? List.of() : partitionInfos.stream()
+                    .map(info -> new TopicPartition(TOPIC, info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            // Records dead-lettered after the replay started are left for a later replay
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            seekToStart(consumer, partitions, request.getFrom());
+
+            Set<TopicPartition> done = new HashSet<>();
+            for (TopicPartition partition : partitions) {
+                if (consumer.position(partition) >= endOffsets.get(partition)) {
+                    done.add(partition);
+                }
+            }
+            Long toMillis = request.getTo() == null ? null : epochMillisOf(request.getTo());
+
+            replaying:
+            while (done.size() < partitions.size()) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (done.contains(partition)) {
+                        continue;
+                    }
+                    if (record.offset() >= endOffsets.get(partition) || (toMillis != null && record.timestamp() > toMillis)) {
+                        done.add(partition);
+                        consumer.pause(List.of(partition));
+                        continue;
+                    }
+                    scanned++;
+                    if (!matches(record, request)) {
+                        continue;
+                    }
+                    // Sends are spread evenly over time so consumers of the original topic are not flooded
+                    long wait = startedAt + sends.size() * nanosPerRecord - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    sends.add(kafkaTemplate.send(toReplayRecord(record)));
+                    if (sends.size() >= request.getLimit()) {
+                        break replaying;
+                    }
+                }
+                for (TopicPartition partition : partitions) {
+                    if (consumer.position(partition) >= endOffsets.get(partition)) {
+                        done.add(partition);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Dead letter replay interrupted after {} records", sends.size());
+        }
+
+        int failed = countFailed(sends);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        log.info("Replayed {} of {} scanned dead letters in {} ms, {} failed", sends.size() - failed, scanned, elapsedMs, failed);
+        return new DeadLetterReplayResultDTO(scanned, sends.size() - failed, failed, elapsedMs);
+    }
+
+    // Only order event topics have a dead-letter topic; failures elsewhere are logged by the error handler
+    private static TopicPartition destinationOf(ConsumerRecord<?, ?> record) {
+        if (!record.topic().startsWith(OrderEventPublisher.TOPIC) || record.topic().equals(TOPIC)) {
+            return null;
+        }
+        // A negative partition lets the producer pick one by key, so an order's dead letters stay together
+        return new TopicPartition(TOPIC, -1);
+    }
+
+    private static void seekToStart(Consumer<?, ?> consumer, List<TopicPartition> partitions, LocalDateTime from) {
+        if (from == null) {
+            consumer.seekToBeginning(partitions);
+            return;
+        }
+        Map<TopicPartition, Long> timestamps = new HashMap<>();
+        partitions.forEach(partition -> timestamps.put(partition, epochMillisOf(from)));
+        Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(timestamps);
+        for (TopicPartition partition : partitions) {
+            OffsetAndTimestamp offset = offsets.get(partition);
+            if (offset == null) {
+                consumer.seekToEnd(List.of(partition));
+            } else {
+                consumer.seek(partition, offset.offset());
+            }
+        }
+    }
+
+    private static boolean matches(ConsumerRecord<String, byte[]> record, DeadLetterReplayRequestDTO request) {
+        if (request.getOriginalTopic() != null && !request.getOriginalTopic().equals(headerValue(record.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC))) {
+            return false;
+        }
+        if (request.getEventType() != null && !request.getEventType().getHeaderValue().equals(headerValue(record.headers(), OrderEventType.HEADER))) {
+            return false;
+        }
+        if (request.getExceptionClass() != null) {
+            String exception = headerValue(record.headers(), KafkaHeaders.DLT_EXCEPTION_FQCN);
+            String cause = headerValue(record.headers(), KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN);
+            return request.getExceptionClass().equals(exception) || request.getExceptionClass().equals(cause);
+        }
+        return true;
+    }
+
+    // Back to the original topic with the original headers; the dead-letter headers are dropped
+    private static ProducerRecord<String, Object> toReplayRecord(ConsumerRecord<String, byte[]> record) {
+        String topic = headerValue(record.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith(KafkaHeaders.PREFIX + "dlt-")) {
+                headers.add(header);
+            }
+        }
+        return new ProducerRecord<>(topic != null ? topic : OrderEventPublisher.TOPIC, null, record.key(), record.value(), headers);
+    }
+
+    private int countFailed(List<CompletableFuture<?>> sends) {
+        kafkaTemplate.flush();
+        int failed = 0;
+        for (CompletableFuture<?> send : sends) {
+            try {
+                send.get(SEND_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed++;
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private static String headerValue(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static long epochMillisOf(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
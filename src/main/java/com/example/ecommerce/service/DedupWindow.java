@@ -0,0 +1,108 @@
+package com.example.ecommerce.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Remembers non-zero long keys for a sliding time window. The window is split into buckets, each a
+ * preallocated open-addressing table of primitive longs: keys go into the newest bucket, and the
+ * oldest one is cleared whenever a bucket's share of the window has passed. A bucket that fills up
+ * starts the next one early, so memory stays fixed and a burst only shortens how long keys are kept.
+ */
+public class DedupWindow {
+
+    private static final long EMPTY = 0;
+
+    private final long bucketNanos;
+    private final int bucketCapacity;
+    private final long[][] buckets;
+    private final int[] sizes;
+    private int newest;
+    private long newestStart;
+
+    public DedupWindow(Duration window, int buckets, int maxEntries) {
+        if (window.isNegative() || window.isZero() || buckets < 1 || maxEntries < buckets) {
+            throw new IllegalArgumentException("A dedup window needs a positive duration and at least one entry per bucket");
+        }
+        this.bucketNanos = window.toNanos() / buckets;
+        this.bucketCapacity = maxEntries / buckets;
+        // At most half full, so probes stay short
+        int tableSize = Integer.highestOneBit(bucketCapacity * 2 - 1) << 1;
+        this.buckets = new long[buckets][tableSize];
+        this.sizes = new int[buckets];
+        this.newestStart = System.nanoTime();
+    }
+
+    public synchronized boolean contains(long key) {
+        expire(System.nanoTime());
+        for (long[] bucket : buckets) {
+            if (bucket[slotOf(bucket, key)] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void add(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key must not be 0");
+        }
+        expire(System.nanoTime());
+        for (int i = 0; i < buckets.length; i++) {
+            if (i != newest && buckets[i][slotOf(buckets[i], key)] == key) {
+                return;
+            }
+        }
+        if (sizes[newest] == bucketCapacity) {
+            rotate();
+            newestStart = System.nanoTime();
+        }
+        long[] bucket = buckets[newest];
+        int slot = slotOf(bucket, key);
+        if (bucket[slot] == EMPTY) {
+            bucket[slot] = key;
+            sizes[newest]++;
+        }
+    }
+
+    public synchronized int size() {
+        expire(System.nanoTime());
+        return Arrays.stream(sizes).sum();
+    }
+
+    private void expire(long now) {
+        long elapsed = now - newestStart;
+        if (elapsed < bucketNanos) {
+            return;
+        }
+        long passed = elapsed / bucketNanos;
+        for (long i = 0; i < Math.min(passed, buckets.length); i++) {
+            rotate();
+        }
+        newestStart += passed * bucketNanos;
+    }
+
+    // Makes the oldest bucket the newest one, dropping its keys
+    private void rotate() {
+        newest = (newest + 1) % buckets.length;
+        Arrays.fill(buckets[newest], EMPTY);
+        sizes[newest] = 0;
+    }
+
+    // The key's slot, or the empty slot where it would go
+    private static int slotOf(long[] bucket, long key) {
+        int mask = bucket.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (bucket[slot] != EMPTY && bucket[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
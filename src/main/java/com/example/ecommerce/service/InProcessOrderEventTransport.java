@@ -0,0 +1,180 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.PaymentRetryEvent;
+import com.example.ecommerce.event.bus.RingBuffer;
+import com.example.ecommerce.event.bus.WaitStrategy;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Delivers order events to the listeners in this JVM, for single-node deployments that run without a
+ * broker. Events go through a preallocated {@link RingBuffer} with one subscriber per Kafka listener,
+ * each calling the same listener method the Kafka container would, with the event wrapped in a record
+ * whose offset is its ring sequence. Ordering per order id holds as on Kafka; so does the outbox, so
+ * events still only go out once their change committed, but an event is taken off the outbox as soon
+ * as it is in the ring and is lost if the process dies before it is handled. The expiration job
+ * cleans up orders left PROCESSING that way.
+ * <p>
+ * The Kafka listener containers are not started in this profile, and with no dead-letter topic a
+ * failed event is only logged.
+ */
+@Component
+@Profile(InProcessOrderEventTransport.PROFILE)
+@Slf4j
+public class InProcessOrderEventTransport implements OrderEventTransport {
+
+    public static final String PROFILE = "in-process-events";
+
+    private static final Acknowledgment NO_ACKNOWLEDGMENT = () -> { };
+
+    private final RingBuffer<Entry> ringBuffer;
+    private final ObjectMapper objectMapper;
+    private final DeadLetterService deadLetterService;
+
+    public InProcessOrderEventTransport(ObjectMapper objectMapper,
+                                        OrderEventConsumer orderEventConsumer,
+                                        NotificationService notificationService,
+                                        OrderStatusStore orderStatusStore,
+                                        PaymentRetryPolicy retryPolicy,
+                                        DeadLetterService deadLetterService,
+                                        @Value("${event-bus.ring-size:65536}") int ringSize,
+                                        @Value("${event-bus.wait-strategy:blocking}") String waitStrategy,
+                                        @Value("${event-bus.max-batch:500}") int maxBatch) {
+        this.objectMapper = objectMapper;
+        this.deadLetterService = deadLetterService;
+        this.ringBuffer = new RingBuffer<>(ringSize, Entry::new, WaitStrategy.of(waitStrategy));
+
+        // Order-created events are handed over a batch at a time, as with the batch listener on Kafka
+        ringBuffer.subscribe(OrderEventConsumer.LISTENER_ID, maxBatch, entries -> {
+            List<ConsumerRecord<String, OrderCreatedEvent>> records = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                if (entry.topic.equals(OrderEventPublisher.TOPIC) && entry.type == OrderEventType.ORDER_CREATED) {
+                    records.add(cast(entry.toRecord()));
+                }
+            }
+            if (records.isEmpty()) {
+                return;
+            }
+            try {
+                orderEventConsumer.awaitWorkers();
+                orderEventConsumer.handleOrderEvents(records, NO_ACKNOWLEDGMENT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error processing {} OrderCreatedEvents", records.size(), e);
+                records.forEach(record -> deadLetterService.deadLetter(record, null, e));
+            }
+        });
+        ringBuffer.subscribe(OrderEventConsumer.PAYMENT_RETRY_LISTENER_ID, maxBatch, eachOf(Set.copyOf(retryPolicy.getTopics()),
+                OrderEventType.PAYMENT_RETRY, record -> orderEventConsumer.schedulePaymentRetry((PaymentRetryEvent) record.value())));
+        // Notifications are stored a batch at a time, as with the batch listener on Kafka
+        ringBuffer.subscribe(NotificationService.LISTENER_ID, maxBatch, entries -> {
+            List<ConsumerRecord<String, Object>> records = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                if (entry.topic.equals(OrderEventPublisher.TOPIC)
+                        && (entry.type == OrderEventType.ORDER_COMPLETED || entry.type == OrderEventType.ORDER_EXPIRED)) {
+                    records.add(entry.toRecord());
+                }
+            }
+            if (!records.isEmpty()) {
+                notificationService.handleOrderEvents(records, null);
+            }
+        });
+        orderStatusStore.markCaughtUp();
+        ringBuffer.subscribe(OrderStatusStore.LISTENER_ID, maxBatch, entries -> {
+            for (Entry entry : entries) {
+                if (entry.topic.equals(OrderEventPublisher.STATUS_TOPIC)) {
+                    orderStatusStore.apply(entry.key, entry.event);
+                }
+            }
+        });
+        log.info("Order events are delivered in-process through a ring of {} entries ({} wait)", ringSize, waitStrategy);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ringBuffer.close();
+    }
+
+    @Override
+    public CompletableFuture<?> send(String topic, String key, OrderEventType type, String payload) {
+        Object event;
+        try {
+            event = TOMBSTONE.equals(payload) ? null : objectMapper.readValue(payload, type.getEventClass());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unreadable " + type.getHeaderValue() + " payload", e);
+        }
+        try {
+            ringBuffer.publish((entry, sequence) -> entry.set(sequence, topic, key, type, event));
+            return CompletableFuture.completedFuture(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    // A subscriber handling the matching events one by one; one that fails is dead-lettered, like on Kafka
+    private Consumer<List<Entry>> eachOf(Set<String> topics, OrderEventType type, Consumer<ConsumerRecord<String, Object>> handler) {
+        return entries -> {
+            for (Entry entry : entries) {
+                if (entry.type != type || !topics.contains(entry.topic)) {
+                    continue;
+                }
+                ConsumerRecord<String, Object> record = entry.toRecord();
+                try {
+                    handler.accept(record);
+                } catch (Exception e) {
+                    log.error("Error processing {} at {}@{}", type.getHeaderValue(), record.topic(), record.offset(), e);
+                    deadLetterService.deadLetter(record, null, e);
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConsumerRecord<String, OrderCreatedEvent> cast(ConsumerRecord<String, Object> record) {
+        return (ConsumerRecord<String, OrderCreatedEvent>) (ConsumerRecord<String, ?>) record;
+    }
+
+    // One ring slot, overwritten in place by every event that lands on it
+    private static final class Entry {
+
+        private long sequence;
+        private String topic;
+        private String key;
+        private OrderEventType type;
+        private Object event;
+
+        private void set(long sequence, String topic, String key, OrderEventType type, Object event) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.key = key;
+            this.type = type;
+            this.event = event;
+        }
+
+        // Listeners may keep the record past the batch, so it is a copy of the slot
+        private ConsumerRecord<String, Object> toRecord() {
+            return new ConsumerRecord<>(topic, 0, sequence, key, event);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.OrderItem;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.Product;
+import com.example.ecommerce.entity.ProductStockShard;
+import com.example.ecommerce.exception.InsufficientStockException;
+import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.ProductStockShardRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reserves and releases product stock with guarded conditional UPDATEs instead of
+ * read-modify-write on the entity, so concurrent orders on the same product never
+ * oversell and only hold the row lock for the duration of the statement's transaction.
+ * Rows are always touched in ascending product id order, which keeps concurrent
+ * multi-item orders from deadlocking each other.
+ * <p>
+ * Hot products can be sharded: their stock is split across {@link ProductStockShard}
+ * counters and each reservation decrements a randomly picked shard, falling back to the
+ * other shards when it runs dry.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryService {
+
+    private final ProductRepository productRepository;
+    private final ProductStockShardRepository stockShardRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY, noRollbackFor = InsufficientStockException.class)
+    public void reserve(Map<Long, Integer> quantities) {
+        adjust(quantities);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(Map<Long, Integer> quantities) {
+        adjust(negate(quantities));
+    }
+
+    /**
+     * Applies per-product stock deltas: positive values are taken from stock (and fail when
+     * stock is short), negative values are returned to it. On {@link InsufficientStockException}
+     * the stock this call already took is given back, so callers that catch it keep consistent
+     * stock; releases made by the same call are undone by the caller's transaction rollback.
+     */
+    @Transactional(propagation = Propagation.MANDATORY, noRollbackFor = InsufficientStockException.class)
+    public void adjust(Map<Long, Integer> deltas) {
+        SortedMap<Long, Integer> ordered = new TreeMap<>(deltas);
+        Map<Long, Integer> shardCounts = shardCountsOf(ordered.entrySet().stream()
+                .filter(delta -> delta.getValue() < 0)
+                .map(Map.Entry::getKey)
+                .toList());
+
+        Map<Long, Integer> taken = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> delta : ordered.entrySet()) {
+            Long productId = delta.getKey();
+            int quantity = delta.getValue();
+            if (quantity > 0) {
+                Integer shards = take(productId, quantity);
+                if (shards == null) {
+                    // Give back this call's earlier lines so callers that catch the exception keep consistent stock
+                    taken.forEach((id, amount) -> give(id, amount, shardCounts.get(id)));
+                    log.debug("Insufficient stock for product {} (requested {})", productId, quantity);
+                    throw new InsufficientStockException("Insufficient stock for product with id: " + productId);
+                }
+                shardCounts.put(productId, shards);
+                taken.put(productId, quantity);
+            } else if (quantity < 0) {
+                give(productId, -quantity, shardCounts.getOrDefault(productId, 0));
+            }
+        }
+    }
+
+    // Replaces the product's stock, splitting it evenly across the given number of shards (0 for none)
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void setStock(Product product, int stock, int shards) {
+        if (product.getStockShards() > 0) {
+            stockShardRepository.deleteByProductId(product.getId());
+        }
+        product.setStockShards(shards);
+        product.setStock(shards > 0 ? 0 : stock);
+
+        List<ProductStockShard> rows = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int share = stock / shards + (shard < stock % shards ? 1 : 0);
+            rows.add(new ProductStockShard(null, product, shard, share));
+        }
+        stockShardRepository.saveAll(rows);
+    }
+
+    // Current stock of the product; shards are locked until the transaction ends so it cannot move
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int lockedStockOf(Product product) {
+        if (product.getStockShards() == 0) {
+            return product.getStock();
+        }
+        return stockShardRepository.lockStockByShard(product.getId()).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    // Stock is taken while an order is open or completed and given back when it expires
+    public static boolean holdsStock(OrderStatus status) {
+        return status != OrderStatus.EXPIRED;
+    }
+
+    public static SortedMap<Long, Integer> quantitiesOf(Collection<OrderItem> items) {
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : items) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    public static SortedMap<Long, Integer> difference(Map<Long, Integer> after, Map<Long, Integer> before) {
+        SortedMap<Long, Integer> deltas = new TreeMap<>(after);
+        before.forEach((productId, quantity) -> deltas.merge(productId, -quantity, Integer::sum));
+        deltas.values().removeIf(quantity -> quantity == 0);
+        return deltas;
+    }
+
+    // Returns the shard count of the product the stock was taken from, or null when stock is short
+    private Integer take(Long productId, int quantity) {
+        if (productRepository.decrementStock(productId, quantity) > 0) {
+            return 0;
+        }
+        // Sharded products keep zero stock in the product row, so only they get past the update above. The
+        // shard count is read from that row, never from the product cache, which can lag a switch to shards
+        int shards = productRepository.findStockShardsById(productId).orElse(0);
+        return shards > 0 && takeFromShards(productId, shards, quantity) ? shards : null;
+    }
+
+    private boolean takeFromShards(Long productId, int shards, int quantity) {
+        // Start at a random shard so concurrent orders on the product lock different rows
+        int first = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            if (stockShardRepository.decrementStock(productId, (first + i) % shards, quantity) > 0) {
+                return true;
+            }
+        }
+
+        // No single shard covers the quantity; lock all of them and take it across shards
+        List<Integer> stockByShard = stockShardRepository.lockStockByShard(productId);
+        if (stockByShard.stream().mapToInt(Integer::intValue).sum() < quantity) {
+            return false;
+        }
+        int remaining = quantity;
+        for (int shard = 0; shard < stockByShard.size() && remaining > 0; shard++) {
+            int part = Math.min(stockByShard.get(shard), remaining);
+            if (part > 0) {
+                stockShardRepository.decrementStock(productId, shard, part);
+                remaining -= part;
+            }
+        }
+        return true;
+    }
+
+    private void give(Long productId, int quantity, int shards) {
+        if (shards > 0) {
+            stockShardRepository.incrementStock(productId, ThreadLocalRandom.current().nextInt(shards), quantity);
+        } else {
+            productRepository.incrementStock(productId, quantity);
+        }
+    }
+
+    private Map<Long, Integer> shardCountsOf(List<Long> productIds) {
+        Map<Long, Integer> shardCounts = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            productRepository.findAllById(productIds)
+                    .forEach(product -> shardCounts.put(product.getId(), product.getStockShards()));
+        }
+        return shardCounts;
+    }
+
+    private static Map<Long, Integer> negate(Map<Long, Integer> quantities) {
+        Map<Long, Integer> negated = new TreeMap<>();
+        quantities.forEach((productId, quantity) -> negated.put(productId, -quantity));
+        return negated;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.event.OrderEventCodec;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.spill.SpillLog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends order events to Kafka in the configured wire format, with their type in a header.
+ * <p>
+ * With {@code kafka.order-events.spill.directory} set to an absolute path, an unreachable broker does not hold up the outbox:
+ * once a send fails, events are appended to a memory-mapped {@link SpillLog} instead and count as sent as
+ * soon as the log is forced to disk, so the relay keeps clearing the outbox without waiting on the broker.
+ * A drainer sends the log to Kafka in order, and only once it is empty do events go straight to Kafka
+ * again; until then new events are appended behind it, so no event overtakes an earlier one.
+ */
+@Component
+@Profile("!" + InProcessOrderEventTransport.PROFILE)
+@Slf4j
+public class KafkaOrderEventTransport implements OrderEventTransport {
+
+    private static final int DRAIN_BATCH = 500;
+
+    private final DefaultKafkaProducerFactory<String, byte[]> producerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean binary;
+    private final long sendTimeoutMs;
+    private final SpillLog spillLog;
+    private final ScheduledExecutorService drainer;
+
+    // Guards the choice between sending and spilling, so nothing is sent directly while the log still has events
+    private final Object spillLock = new Object();
+    private volatile boolean healthy = true;
+    // Made at the first send after a flush and kept for the relay's whole round, so a send failing part way
+    // through cannot leave later events of the round in the log ahead of it
+    private Boolean roundSpills;
+    private boolean sentSinceFlush;
+
+    public KafkaOrderEventTransport(ProducerFactory<?, ?> producerFactory,
+                                    ObjectMapper objectMapper,
+                                    @Value("${kafka.order-events.wire-format:json}") String wireFormat,
+                                    @Value("${outbox.relay.send-timeout-ms:30000}") long sendTimeoutMs,
+                                    @Value("${kafka.order-events.spill.directory:}") String spillDirectory,
+                                    @Value("${kafka.order-events.spill.segment-size:64MB}") DataSize segmentSize,
+                                    @Value("${kafka.order-events.spill.drain-interval-ms:1000}") long drainIntervalMs,
+                                    @Value("${kafka.order-events.spill.max-block-ms:1000}") long maxBlockMs,
+                                    @Value("${kafka.order-events.spill.delivery-timeout-ms:10000}") long deliveryTimeoutMs) throws IOException {
+        // Payloads leave as ready-made bytes, so the application's producer settings are used with a byte[] serializer
+        Map<String, Object> producerConfig = new HashMap<>(producerFactory.getConfigurationProperties());
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        boolean spilling = !spillDirectory.isBlank();
+        if (spilling) {
+            // An unreachable broker has to show up as a failed send within seconds, not after minutes of blocking
+            producerConfig.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+            producerConfig.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, (int) deliveryTimeoutMs);
+            producerConfig.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, (int) deliveryTimeoutMs / 2);
+        }
+        this.producerFactory = new DefaultKafkaProducerFactory<>(producerConfig);
+        this.kafkaTemplate = new KafkaTemplate<>(this.producerFactory);
+        this.objectMapper = objectMapper;
+        this.binary = switch (wireFormat.toLowerCase()) {
+            case "json" -> false;
+            case OrderEventCodec.BINARY_FORMAT -> true;
+            default -> throw new IllegalArgumentException("Unknown order event wire format: " + wireFormat);
+        };
+        this.sendTimeoutMs = sendTimeoutMs;
+
+        if (spilling) {
+            Path spillPath = Path.of(spillDirectory);
+            if (!spillPath.isAbsolute()) {
+                // Relative to wherever the process was started, spilled events could be left behind by the next start
+                throw new IllegalArgumentException("The order event spill directory must be an absolute path: " + spillDirectory);
+            }
+            this.spillLog = new SpillLog(spillPath, (int) segmentSize.toBytes());
+            this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "order-event-spill-drainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Events left from before a restart are drained first
+            this.healthy = spillLog.isEmpty();
+            drainer.scheduleWithFixedDelay(this::drain, 0, drainIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.spillLog = null;
+            this.drainer = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+        producerFactory.destroy();
+    }
+
+    // True while events go to the spill log instead of Kafka
+    public boolean isSpilling() {
+        return !healthy;
+    }
+
+    @Override
+    public CompletableFuture<?> send(String topic, String key, OrderEventType type, String payload) {
+        byte[] value;
+        try {
+            // The stored payload already is the JSON wire format; only the binary format needs it parsed
+            if (TOMBSTONE.equals(payload)) {
+                value = null;
+            } else {
+                value = binary
+                        ? OrderEventCodec.encode(type, objectMapper.readValue(payload, type.getEventClass()))
+                        : payload.getBytes(StandardCharsets.UTF_8);
+            }
+        } catch (JsonProcessingException | SerializationException e) {
+            throw new IllegalArgumentException("Unreadable " + type.getHeaderValue() + " payload", e);
+        }
+
+        if (spillLog != null) {
+            synchronized (spillLock) {
+                if (roundSpills == null) {
+                    roundSpills = !healthy || !spillLog.isEmpty();
+                }
+                if (roundSpills) {
+                    spill(topic, key, type, binary, value);
+                    // Done once flush forced the log to disk, which the relay calls before it waits for sends
+                    return CompletableFuture.completedFuture(null);
+                }
+            }
+        }
+        if (!healthy) {
+            // The round went to Kafka but a send already failed; the rest fail fast instead of each blocking
+            // on metadata, and the relay sends them again, to the log, in its next round
+            return CompletableFuture.failedFuture(new IllegalStateException("Kafka is unavailable"));
+        }
+        sentSinceFlush = true;
+        try {
+            return kafkaTemplate.send(toRecord(topic, key, type, binary, value)).whenComplete((result, exception) -> {
+                if (exception != null) {
+                    markUnhealthy(exception);
+                }
+            });
+        } catch (RuntimeException e) {
+            markUnhealthy(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        // With the broker gone, flushing would only wait for sends that are bound to time out
+        if (sentSinceFlush && healthy) {
+            kafkaTemplate.flush();
+        }
+        sentSinceFlush = false;
+        if (spillLog != null) {
+            synchronized (spillLock) {
+                spillLog.force();
+                roundSpills = null;
+            }
+        }
+    }
+
+    private void markUnhealthy(Throwable exception) {
+        if (spillLog != null && healthy) {
+            healthy = false;
+            log.warn("Sending order events to Kafka failed, spilling them to disk until it recovers: {}", exception.getMessage());
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                SpillLog.Batch batch;
+                synchronized (spillLock) {
+                    if (spillLog.isEmpty()) {
+                        if (!healthy) {
+                            healthy = true;
+                            log.info("Spilled order events drained, sending to Kafka directly again");
+                        }
+                        return;
+                    }
+                    batch = spillLog.read(DRAIN_BATCH);
+                }
+                if (batch.records().isEmpty()) {
+                    // Only segment ends left before the end of the log, as after a crash while rolling over: skipping them drains it
+                    spillLog.advance(batch.next());
+                    continue;
+                }
+                // The first event probes the broker, so an outage costs one timeout rather than one per event
+                List<ProducerRecord<String, byte[]>> records = new ArrayList<>(batch.records().size());
+                for (byte[] spilled : batch.records()) {
+                    records.add(fromSpilled(spilled));
+                }
+                kafkaTemplate.send(records.get(0)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                List<CompletableFuture<?>> sends = new ArrayList<>(records.size());
+                for (ProducerRecord<String, byte[]> record : records.subList(1, records.size())) {
+                    sends.add(kafkaTemplate.send(record));
+                }
+                kafkaTemplate.flush();
+                for (CompletableFuture<?> send : sends) {
+                    send.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                }
+                spillLog.advance(batch.next());
+                log.debug("Drained {} spilled order events", records.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Retried from the same position on the next run; events sent before the failure go out again
+            log.warn("Draining spilled order events failed, retrying later: {}", e.getMessage());
+        }
+    }
+
+    private void spill(String topic, String key, OrderEventType type, boolean binary, byte[] value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((value != null ? value.length : 0) + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(topic);
+            out.writeBoolean(key != null);
+            out.writeUTF(key != null ? key : "");
+            out.writeUTF(type.getHeaderValue());
+            out.writeBoolean(binary);
+            // -1 for a tombstone
+            out.writeInt(value != null ? value.length : -1);
+            if (value != null) {
+                out.write(value);
+            }
+            spillLog.append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill order event", e);
+        }
+    }
+
+    private static ProducerRecord<String, byte[]> fromSpilled(byte[] spilled) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(spilled));
+        String topic = in.readUTF();
+        boolean hasKey = in.readBoolean();
+        String key = in.readUTF();
+        OrderEventType type = OrderEventType.fromHeaderValue(in.readUTF())
+                .orElseThrow(() -> new IOException("Spilled order event of unknown type"));
+        boolean binary = in.readBoolean();
+        int length = in.readInt();
+        byte[] value = length >= 0 ? in.readNBytes(length) : null;
+        return toRecord(topic, hasKey ? key : null, type, binary, value);
+    }
+
+    private static ProducerRecord<String, byte[]> toRecord(String topic, String key, OrderEventType type, boolean binary, byte[] value) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
+        record.headers().add(OrderEventType.HEADER, type.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        if (binary && value != null) {
+            record.headers().add(OrderEventCodec.FORMAT_HEADER, OrderEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+}
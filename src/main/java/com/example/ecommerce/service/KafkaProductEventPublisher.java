@@ -0,0 +1,51 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.event.ProductChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+// Tells the other instances through Kafka, each of which evicts the product from its own cache
+@Service
+@Profile("!" + InProcessOrderEventTransport.PROFILE)
+@RequiredArgsConstructor
+@Slf4j
+public class KafkaProductEventPublisher implements ProductEventPublisher {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    // Sent only once the change is committed, so other nodes cannot reload the old row after evicting
+    @Override
+    public void publishProductChanged(Long productId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(productId);
+                }
+            });
+        } else {
+            send(productId);
+        }
+    }
+
+    private void send(Long productId) {
+        try {
+            ProductChangedEvent event = new ProductChangedEvent(productId, LocalDateTime.now());
+            kafkaTemplate.send(TOPIC, String.valueOf(productId), event)
+                .thenAccept(result -> log.debug("Published ProductChangedEvent for product: {}", productId))
+                .exceptionally(ex -> {
+                    log.error("Failed to publish ProductChangedEvent for product: {}", productId, ex);
+                    return null;
+                });
+        } catch (Exception e) {
+            log.error("Error publishing ProductChangedEvent for product: {}", productId, e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.ecommerce.service;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a fixed number of single-threaded lanes picked by key: tasks with the same key run
+ * one after another in submission order, tasks with different keys run in parallel. Each task has a
+ * weight, such as the number of events it handles. {@link #submit} never blocks: the caller holds back
+ * its own input once {@link #isSaturated} says {@code maxInFlight} weight is queued or running, the way a
+ * Kafka listener pauses its partitions, so the bound can be overshot by what the caller had already taken;
+ * a caller with nothing to pause waits in {@link #awaitCapacity} instead.
+ */
+public class KeyOrderedExecutor implements AutoCloseable {
+
+    private final ExecutorService[] lanes;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public KeyOrderedExecutor(String name, int lanes, int maxInFlight) {
+        if (lanes < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("A key-ordered executor needs at least one lane and one task in flight");
+        }
+        this.lanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            String threadName = name + "-" + (i + 1);
+            this.lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void submit(Object key, int weight, Runnable task) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("A task needs a weight of at least one");
+        }
+        inFlight.addAndGet(weight);
+        try {
+            lanes[laneOf(key)].execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(weight);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(weight);
+            throw e;
+        }
+    }
+
+    // For callers with no input to pause: blocks until the executor is below its bound
+    public synchronized void awaitCapacity() throws InterruptedException {
+        while (isSaturated()) {
+            wait();
+        }
+    }
+
+    // Keys of the same lane share its thread, so tasks for them can also be submitted as one
+    public int laneOf(Object key) {
+        return Math.floorMod(Objects.hashCode(key), lanes.length);
+    }
+
+    // Weight of the tasks queued or running
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isSaturated() {
+        return inFlight.get() >= maxInFlight;
+    }
+
+    private void release(int weight) {
+        int left = inFlight.addAndGet(-weight);
+        if (left < maxInFlight && left + weight >= maxInFlight) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    // Lets queued tasks finish, waiting up to 30 seconds for them
+    @Override
+    public void close() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
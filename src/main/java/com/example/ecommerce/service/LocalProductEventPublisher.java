@@ -0,0 +1,17 @@
+package com.example.ecommerce.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+// A single node has no other caches to tell, and there is no broker to tell them through
+@Service
+@Profile(InProcessOrderEventTransport.PROFILE)
+@Slf4j
+public class LocalProductEventPublisher implements ProductEventPublisher {
+
+    @Override
+    public void publishProductChanged(Long productId) {
+        log.debug("Product {} changed, evicted from the local cache only", productId);
+    }
+}
@@ -2,91 +2,179 @@ package com.example.ecommerce.service;
 
 import com.example.ecommerce.entity.Notification;
 import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderEventDeserializer;
+import com.example.ecommerce.event.OrderEventType;
 import com.example.ecommerce.event.OrderExpiredEvent;
 import com.example.ecommerce.repository.NotificationRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
-    private final NotificationRepository notificationRepository;
-    private final ObjectMapper objectMapper;
-
-    @KafkaListener(topics = "order-events", groupId = "notification-service-group")
-    public void handleOrderEvents(org.apache.kafka.clients.consumer.ConsumerRecord<String, Map<String, Object>> record) {
-        try {
-            String key = record.key();
-            Map<String, Object> message = record.value();
+    public static final String LISTENER_ID = "notification-service";
 
-            // Check if this has userId field (OrderCreatedEvent) - ignore it
-            if (message.containsKey("userId")) {
-                return;
-            }
+    private final NotificationRepository notificationRepository;
+    private final DeadLetterService deadLetterService;
+    // Orders and types notified recently, so redelivered events are dropped without touching the database
+    private final DedupWindow recentlyNotified;
+
+    public NotificationService(NotificationRepository notificationRepository,
+                               DeadLetterService deadLetterService,
+                               @Value("${notifications.dedup.window:10m}") Duration dedupWindow,
+                               @Value("${notifications.dedup.buckets:10}") int dedupBuckets,
+                               @Value("${notifications.dedup.max-entries:200000}") int dedupMaxEntries) {
+        this.notificationRepository = notificationRepository;
+        this.deadLetterService = deadLetterService;
+        this.recentlyNotified = new DedupWindow(dedupWindow, dedupBuckets, dedupMaxEntries);
+    }
 
-            // Use the key to determine event type
-            if (key != null && key.startsWith("order-completed-")) {
-                OrderCompletedEvent event = objectMapper.convertValue(message, OrderCompletedEvent.class);
-                handleOrderCompleted(event);
-            } else if (key != null && key.startsWith("order-expired-")) {
-                OrderExpiredEvent event = objectMapper.convertValue(message, OrderExpiredEvent.class);
-                handleOrderExpired(event);
+    // Receives a whole poll at once so its notifications are stored with one batched insert.
+    // Only completed and expired events are parsed; the filter drops the rest before they get here.
+    // Events redelivered after a rebalance are dropped by the dedup window, or failing that by the insert,
+    // which skips notifications the table already has. Records that cannot be read or stored are
+    // dead-lettered one by one, so the rest of the poll goes through
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = OrderEventPublisher.TOPIC, groupId = "notification-service-group",
+            concurrency = "${kafka.order-events.listener-concurrency:3}", batch = "true",
+            filter = "skippedOrderEventFilter",
+            properties = {
+                    "spring.deserializer.value.delegate.class=com.example.ecommerce.event.OrderEventDeserializer",
+                    OrderEventDeserializer.ACCEPTED_TYPES_CONFIG + "=ORDER_COMPLETED,ORDER_EXPIRED"
+            })
+    public void handleOrderEvents(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        List<Notification> notifications = new ArrayList<>();
+        List<ConsumerRecord<String, Object>> sources = new ArrayList<>();
+        Set<Long> keys = new HashSet<>();
+        int duplicates = 0;
+        for (ConsumerRecord<String, Object> record : records) {
+            try {
+                // Checked before anything is sent, so a redelivered event does not send its email again
+                Long key = dedupKeyOf(record.value());
+                if (key != null && (recentlyNotified.contains(key) || !keys.add(key))) {
+                    duplicates++;
+                    continue;
+                }
+                Notification notification = toNotification(record);
+                if (notification != null) {
+                    notifications.add(notification);
+                    sources.add(record);
+                } else {
+                    deadLetter(record, consumer, DeadLetterService.deserializationFailureOf(record));
+                }
+            } catch (Exception e) {
+                log.error("Error processing order event at {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+                deadLetter(record, consumer, e);
             }
+        }
+        if (duplicates > 0) {
+            log.info("Dropped {} duplicate order events", duplicates);
+        }
+        if (notifications.isEmpty()) {
+            return;
+        }
 
+        try {
+            notificationRepository.insertIgnoringDuplicates(notifications);
+            notifications.forEach(this::remember);
+            log.info("Wrote {} notifications from {} order events, skipping any already stored", notifications.size(), records.size());
         } catch (Exception e) {
-            log.error("Error processing order event", e);
+            // One bad row fails the whole batch; saving one by one keeps the others
+            log.warn("Saving {} notifications as a batch failed, saving them one by one", notifications.size(), e);
+            saveEach(notifications, sources, consumer);
         }
     }
 
-    private void handleOrderCompleted(OrderCompletedEvent event) {
-        try {
-            log.info("Received OrderCompletedEvent for order: {}", event.getOrderId());
+    private void saveEach(List<Notification> notifications, List<ConsumerRecord<String, Object>> sources, Consumer<?, ?> consumer) {
+        for (int i = 0; i < notifications.size(); i++) {
+            Notification notification = notifications.get(i);
+            try {
+                notificationRepository.insertIgnoringDuplicates(List.of(notification));
+                remember(notification);
+            } catch (Exception e) {
+                log.error("Error saving {} notification for order: {}", notification.getType(), notification.getOrderId(), e);
+                deadLetter(sources.get(i), consumer, e);
+            }
+        }
+    }
 
-            // Simulate email notification (log to console)
-            String emailMessage = String.format(
-                "FAKE EMAIL: Order %d has been completed successfully!",
-                event.getOrderId()
-            );
-            log.info("📧 {}", emailMessage);
+    // Only stored notifications are remembered, so an event that failed is not dropped when it is replayed
+    private void remember(Notification notification) {
+        recentlyNotified.add(dedupKeyOf(notification.getOrderId(), OrderEventType.valueOf(notification.getType())));
+    }
 
-            // Save notification to database (audit trail)
-            Notification notification = new Notification();
-            notification.setOrderId(event.getOrderId());
-            notification.setType("ORDER_COMPLETED");
-            notification.setMessage(emailMessage);
-            notificationRepository.save(notification);
+    // Null for records whose payload could not be read
+    private static Long dedupKeyOf(Object event) {
+        if (event instanceof OrderCompletedEvent completed) {
+            return dedupKeyOf(completed.getOrderId(), OrderEventType.ORDER_COMPLETED);
+        } else if (event instanceof OrderExpiredEvent expired) {
+            return dedupKeyOf(expired.getOrderId(), OrderEventType.ORDER_EXPIRED);
+        }
+        return null;
+    }
 
-            log.info("Notification saved to database for order: {}", event.getOrderId());
+    // The order id with the event type in the low bits; never 0
+    private static long dedupKeyOf(Long orderId, OrderEventType type) {
+        return orderId << 3 | (type.ordinal() + 1);
+    }
 
+    // A dead letter that cannot be sent either is only logged, so it does not hold back the rest of the poll
+    private void deadLetter(ConsumerRecord<String, Object> record, Consumer<?, ?> consumer, Exception exception) {
+        try {
+            deadLetterService.deadLetter(record, consumer, exception);
         } catch (Exception e) {
-            log.error("Error handling OrderCompletedEvent for order: {}", event.getOrderId(), e);
+            log.error("Could not dead-letter order event at {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
         }
     }
 
-    private void handleOrderExpired(OrderExpiredEvent event) {
-        try {
-            log.info("Received OrderExpiredEvent for order: {}", event.getOrderId());
+    // Returns null for records whose payload could not be read
+    private Notification toNotification(ConsumerRecord<String, Object> record) {
+        Object event = record.value();
+        if (event instanceof OrderCompletedEvent completed) {
+            return handleOrderCompleted(completed);
+        } else if (event instanceof OrderExpiredEvent expired) {
+            return handleOrderExpired(expired);
+        }
+        return null;
+    }
 
-            // No email for expired orders, just save to database
-            Notification notification = new Notification();
-            notification.setOrderId(event.getOrderId());
-            notification.setType("ORDER_EXPIRED");
-            notification.setMessage(String.format("Order %d has expired after 10 minutes in PROCESSING state",
-                                                  event.getOrderId()));
-            notificationRepository.save(notification);
+    private Notification handleOrderCompleted(OrderCompletedEvent event) {
+        log.info("Received OrderCompletedEvent for order: {}", event.getOrderId());
+
+        // Simulate email notification (log to console)
+        String emailMessage = String.format(
+            "FAKE EMAIL: Order %d has been completed successfully!",
+            event.getOrderId()
+        );
+        log.info("📧 {}", emailMessage);
+
+        // Saved to database with the rest of the batch (audit trail)
+        Notification notification = new Notification();
+        notification.setOrderId(event.getOrderId());
+        notification.setType(OrderEventType.ORDER_COMPLETED.name());
+        notification.setMessage(emailMessage);
+        return notification;
+    }
 
-            log.info("Expiration notification saved to database for order: {}", event.getOrderId());
+    private Notification handleOrderExpired(OrderExpiredEvent event) {
+        log.info("Received OrderExpiredEvent for order: {}", event.getOrderId());
 
-        } catch (Exception e) {
-            log.error("Error handling OrderExpiredEvent for order: {}", event.getOrderId(), e);
-        }
+        // No email for expired orders, just save to database
+        Notification notification = new Notification();
+        notification.setOrderId(event.getOrderId());
+        notification.setType(OrderEventType.ORDER_EXPIRED.name());
+        notification.setMessage(String.format("Order %d has expired without a completed payment",
+                                              event.getOrderId()));
+        return notification;
     }
 }
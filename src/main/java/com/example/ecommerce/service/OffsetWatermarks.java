@@ -0,0 +1,147 @@
+package com.example.ecommerce.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Committed offsets for a listener whose records finish off the listener thread, in any order. For each
+ * partition the watermark is the lowest offset still running, or the offset after the last record the
+ * listener got past when none is, so everything before it is done and it can be committed while later
+ * records are still running and the listener keeps polling. Records are started and passed on the consumer
+ * thread and finished on any thread; {@link #commit} runs on the consumer thread before every poll, from
+ * the container's interceptor, and commits the watermarks that moved asynchronously. The container itself
+ * must not commit: its ack mode is MANUAL and nothing is acknowledged, and these watermarks are its
+ * rebalance listener.
+ * <p>
+ * A revoked partition is committed synchronously one last time and forgotten. Its records still running
+ * finish unseen; if they are not done by then, the partition's new owner gets them again.
+ */
+@Slf4j
+public class OffsetWatermarks implements ConsumerAwareRebalanceListener {
+
+    private final String name;
+    private final Map<TopicPartition, Progress> partitions = new ConcurrentHashMap<>();
+
+    public OffsetWatermarks(String name) {
+        this.name = name;
+    }
+
+    // On the consumer thread, when the record is handed off; the returned callback finishes it, on any thread
+    public Runnable start(ConsumerRecord<?, ?> record) {
+        Progress progress = progressOf(new TopicPartition(record.topic(), record.partition()));
+        long offset = record.offset();
+        progress.running.add(offset);
+        progress.passed(offset + 1);
+        return () -> progress.running.remove(offset);
+    }
+
+    // On the consumer thread, for a record the listener is done with on the spot
+    public void pass(ConsumerRecord<?, ?> record) {
+        progressOf(new TopicPartition(record.topic(), record.partition())).passed(record.offset() + 1);
+    }
+
+    // On the consumer thread, once the listener got past a whole poll, including the records filtered out before it
+    public void pass(ConsumerRecords<?, ?> records) {
+        for (TopicPartition partition : records.partitions()) {
+            var partitionRecords = records.records(partition);
+            progressOf(partition).passed(partitionRecords.get(partitionRecords.size() - 1).offset() + 1);
+        }
+    }
+
+    // Records started and not finished yet
+    public int getRunning() {
+        int running = 0;
+        for (Progress progress : partitions.values()) {
+            running += progress.running.size();
+        }
+        return running;
+    }
+
+    public void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = moved(consumer.assignment());
+        if (offsets.isEmpty()) {
+            return;
+        }
+        consumer.commitAsync(offsets, (committed, exception) -> {
+            if (exception != null) {
+                // Sent again with the next commit
+                log.warn("Could not commit {} offsets {}: {}", name, committed, exception.getMessage());
+                committed.keySet().forEach(partition -> {
+                    Progress progress = partitions.get(partition);
+                    if (progress != null) {
+                        progress.committed = -1;
+                    }
+                });
+            }
+        });
+    }
+
+    // Commits what is done before the consumer gives the partitions up, and leaves their records still running behind
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = moved(revoked);
+        try {
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+            }
+        } catch (Exception e) {
+            log.warn("Could not commit {} offsets {} of revoked partitions: {}", name, offsets, e.getMessage());
+        } finally {
+            revoked.forEach(partitions::remove);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        lost.forEach(partitions::remove);
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> moved(Collection<TopicPartition> candidates) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : candidates) {
+            Progress progress = partitions.get(partition);
+            if (progress == null) {
+                continue;
+            }
+            long watermark = progress.watermark();
+            if (watermark > progress.committed) {
+                offsets.put(partition, new OffsetAndMetadata(watermark));
+                progress.committed = watermark;
+            }
+        }
+        return offsets;
+    }
+
+    private Progress progressOf(TopicPartition partition) {
+        return partitions.computeIfAbsent(partition, p -> new Progress());
+    }
+
+    private static final class Progress {
+
+        final ConcurrentSkipListSet<Long> running = new ConcurrentSkipListSet<>();
+        // Only touched on the consumer thread
+        long passed = -1;
+        long committed = -1;
+
+        void passed(long next) {
+            passed = Math.max(passed, next);
+        }
+
+        long watermark() {
+            Iterator<Long> lowest = running.iterator();
+            return lowest.hasNext() ? Math.min(lowest.next(), passed) : passed;
+        }
+    }
+}
@@ -1,81 +1,311 @@
 package com.example.ecommerce.service;
 
-import com.example.ecommerce.entity.Order;
 import com.example.ecommerce.entity.OrderStatus;
 import com.example.ecommerce.event.OrderCreatedEvent;
-import com.example.ecommerce.exception.ResourceNotFoundException;
+import com.example.ecommerce.event.OrderEventDeserializer;
+import com.example.ecommerce.event.PaymentRetryEvent;
 import com.example.ecommerce.repository.OrderRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.KafkaConsumerBackoffManager;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Consumes order-created events and payment retries. Order-created events arrive a poll at a time:
+ * the poll's orders move from PENDING to PROCESSING with one locking select and one set-based update,
+ * and only the orders that moved get a payment. By default each poll is handled on the listener thread.
+ * With {@code kafka.order-events.key-ordered.workers} set, the poll is split by {@link KeyOrderedExecutor}
+ * lane instead: each lane handles the events of its keys as one batch, so events of one order keep their
+ * order while different orders of the same partition are handled in parallel. The listener does not wait
+ * for the lanes; it goes on polling while {@link OffsetWatermarks} commits each partition up to its oldest
+ * event still queued or running, and before a poll it pauses its partitions while the workers hold
+ * {@code kafka.order-events.key-ordered.max-in-flight} events, resuming them once they drain.
+ * <p>
+ * Failures other than interrupts reach the container's error handler, which retries the poll and then
+ * dead-letters its events. In key-ordered mode a lane whose batch fails is handled again one event at a
+ * time on its worker, and only the events that still fail are dead-lettered.
+ * Payment retries wait on their retry topic until they are due and are then tried on the payment scheduler;
+ * a retry whose outcome cannot be stored is dead-lettered.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class OrderEventConsumer {
 
+    public static final String LISTENER_ID = "order-processor";
+    public static final String PAYMENT_RETRY_LISTENER_ID = "payment-retry";
+
     private final OrderRepository orderRepository;
+    private final PaymentProcessor paymentProcessor;
     private final OrderEventPublisher eventPublisher;
-    private final ObjectMapper objectMapper;
+    private final PaymentRetryPolicy retryPolicy;
+    private final DeadLetterService deadLetterService;
+    private final TransactionTemplate transactionTemplate;
+    private final KafkaConsumerBackoffManager retryBackoffManager;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final KeyOrderedExecutor workers;
+    private final OffsetWatermarks watermarks;
+    private final OffsetWatermarks retryWatermarks;
+    // Partitions the listener paused itself because the workers were full, across its consumers
+    private final Set<TopicPartition> pausedForWorkers = ConcurrentHashMap.newKeySet();
 
-    @KafkaListener(topics = "order-events", groupId = "order-processor-group")
-    public void handleOrderEvents(@Payload Map<String, Object> message) {
-        try {
-            // Check if this is an OrderCreatedEvent (has userId field)
-            if (!message.containsKey("userId")) {
-                // Not an OrderCreatedEvent, ignore
-                return;
+    public OrderEventConsumer(OrderRepository orderRepository,
+                              PaymentProcessor paymentProcessor,
+                              OrderEventPublisher eventPublisher,
+                              PaymentRetryPolicy retryPolicy,
+                              DeadLetterService deadLetterService,
+                              TransactionTemplate transactionTemplate,
+                              KafkaConsumerBackoffManager retryBackoffManager,
+                              KafkaListenerEndpointRegistry listenerRegistry,
+                              OffsetWatermarks orderEventWatermarks,
+                              OffsetWatermarks paymentRetryWatermarks,
+                              @Value("${kafka.order-events.key-ordered.workers:0}") int workers,
+                              @Value("${kafka.order-events.key-ordered.max-in-flight:1000}") int maxInFlight) {
+        this.orderRepository = orderRepository;
+        this.paymentProcessor = paymentProcessor;
+        this.eventPublisher = eventPublisher;
+        this.retryPolicy = retryPolicy;
+        this.deadLetterService = deadLetterService;
+        this.transactionTemplate = transactionTemplate;
+        this.retryBackoffManager = retryBackoffManager;
+        this.listenerRegistry = listenerRegistry;
+        this.watermarks = orderEventWatermarks;
+        this.retryWatermarks = paymentRetryWatermarks;
+        this.workers = workers > 0 ? new KeyOrderedExecutor("order-event-worker", workers, maxInFlight) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (workers != null) {
+            workers.close();
+        }
+    }
+
+    // Order-created events handed to the workers and not finished yet
+    public int getInFlight() {
+        return workers == null ? 0 : workers.getInFlight();
+    }
+
+    // The in-process ring has no partitions to pause, so its subscriber waits for the workers instead
+    public void awaitWorkers() throws InterruptedException {
+        if (workers != null) {
+            workers.awaitCapacity();
+        }
+    }
+
+    // Key-ordered mode, on the consumer thread before every poll. Pausing the consumer directly is re-asserted
+    // each time, as resuming the container resumes every partition; the container's own pause is left alone
+    public void beforePoll(Consumer<?, ?> consumer) {
+        Set<TopicPartition> assigned = consumer.assignment();
+        if (workers.isSaturated()) {
+            if (pausedForWorkers.addAll(assigned)) {
+                log.debug("{} order events in flight, pausing {}", workers.getInFlight(), assigned);
+            }
+            consumer.pause(assigned);
+        } else if (!pausedForWorkers.isEmpty() && !isContainerPaused()) {
+            List<TopicPartition> resumed = assigned.stream().filter(pausedForWorkers::remove).toList();
+            if (!resumed.isEmpty()) {
+                consumer.resume(resumed);
+                log.debug("Order event workers drained, resuming {}", resumed);
             }
+        }
+        watermarks.commit(consumer);
+    }
 
-            // Convert Map to OrderCreatedEvent
-            OrderCreatedEvent event = objectMapper.convertValue(message, OrderCreatedEvent.class);
-            handleOrderCreated(event);
+    private boolean isContainerPaused() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        return container != null && container.isPauseRequested();
+    }
 
-        } catch (Exception e) {
-            log.error("Error processing order event", e);
+    // Only OrderCreatedEvents are parsed; the filter drops the other order events before they get here
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = OrderEventPublisher.TOPIC, groupId = "order-processor-group",
+            containerFactory = "orderEventContainerFactory",
+            concurrency = "${kafka.order-events.listener-concurrency:3}", batch = "true",
+            filter = "skippedOrderEventFilter",
+            properties = {
+                    "spring.deserializer.value.delegate.class=com.example.ecommerce.event.OrderEventDeserializer",
+                    OrderEventDeserializer.ACCEPTED_TYPES_CONFIG + "=ORDER_CREATED"
+            })
+    public void handleOrderEvents(List<ConsumerRecord<String, OrderCreatedEvent>> records, Acknowledgment acknowledgment) {
+        if (workers == null) {
+            handleOrdersCreated(records);
+            acknowledgment.acknowledge();
+            return;
+        }
+        Map<Integer, List<ConsumerRecord<String, OrderCreatedEvent>>> byLane = new LinkedHashMap<>();
+        for (ConsumerRecord<String, OrderCreatedEvent> record : records) {
+            byLane.computeIfAbsent(workers.laneOf(record.key()), lane -> new ArrayList<>()).add(record);
+        }
+        for (List<ConsumerRecord<String, OrderCreatedEvent>> batch : byLane.values()) {
+            // Nothing is acknowledged: each event's offset is only committed once it and every event before it are done
+            List<Runnable> finished = batch.stream().map(watermarks::start).toList();
+            // Weighed by its events, so the in-flight bound and count are in events however the poll splits into lanes
+            workers.submit(batch.get(0).key(), batch.size(), () -> {
+                try {
+                    handleOrdersCreated(batch);
+                } catch (Exception e) {
+                    // One bad event fails the lane's batch; handling them one by one keeps the others
+                    log.warn("Processing {} OrderCreatedEvents as a batch failed, processing them one by one", batch.size(), e);
+                    handleEach(batch);
+                } finally {
+                    finished.forEach(Runnable::run);
+                }
+            });
         }
     }
 
-    private void handleOrderCreated(OrderCreatedEvent event) {
+    // A retry waits on its topic: until the record is due its partition is paused and the record sought back, so a
+    // pending retry survives a restart. A due retry is attempted on the payment scheduler while the listener goes on
+    // with the next records, and its offset is only committed once the attempt has run and its outcome is stored
+    @KafkaListener(id = PAYMENT_RETRY_LISTENER_ID, idIsGroup = false, topics = "#{@paymentRetryPolicy.topics}",
+            groupId = "payment-retry-group", containerFactory = "paymentRetryContainerFactory",
+            concurrency = "${kafka.order-events.listener-concurrency:3}",
+            filter = "skippedOrderEventFilter",
+            properties = {
+                    "spring.deserializer.value.delegate.class=com.example.ecommerce.event.OrderEventDeserializer",
+                    OrderEventDeserializer.ACCEPTED_TYPES_CONFIG + "=PAYMENT_RETRY"
+            })
+    public void handlePaymentRetry(ConsumerRecord<String, PaymentRetryEvent> record, Consumer<?, ?> consumer) throws InterruptedException {
+        PaymentRetryEvent event = record.value();
+        if (!isConfigured(event)) {
+            return;
+        }
+        long dueAt = record.timestamp() + retryPolicy.delayOf(event.getAttempt()).toMillis();
+        retryBackoffManager.backOffIfNecessary(retryBackoffManager.createContext(dueAt, PAYMENT_RETRY_LISTENER_ID,
+                new TopicPartition(record.topic(), record.partition()), consumer));
+        if (!isProcessing(event)) {
+            return;
+        }
+        Runnable finished = retryWatermarks.start(record);
+        try {
+            paymentProcessor.retryNow(event.getOrderId(), event.getAttempt()).whenComplete((result, e) -> {
+                if (e == null) {
+                    log.info("Order {} payment retry {} attempted", event.getOrderId(), event.getAttempt());
+                } else {
+                    deadLetter(record, e instanceof Exception exception ? exception : new IllegalStateException(e));
+                }
+                finished.run();
+            });
+        } catch (RuntimeException e) {
+            finished.run();
+            throw e;
+        }
+    }
+
+    // In-process events have no topic to wait on, so the backoff is waited out on the payment scheduler
+    public void schedulePaymentRetry(PaymentRetryEvent event) {
         try {
-            log.info("Received OrderCreatedEvent for order: {}", event.getOrderId());
+            if (!isConfigured(event) || !isProcessing(event)) {
+                return;
+            }
+            LocalDateTime dueAt = event.getTimestamp().plus(retryPolicy.delayOf(event.getAttempt()));
+            paymentProcessor.retry(event.getOrderId(), event.getAttempt(), Duration.between(LocalDateTime.now(), dueAt).toMillis());
+            log.info("Order {} payment retry {} scheduled for {}", event.getOrderId(), event.getAttempt(), dueAt);
 
-            Order order = orderRepository.findById(event.getOrderId())
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found: " + event.getOrderId()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Payment retry interrupted for order: {}", event.getOrderId(), e);
+        }
+    }
 
-            // Update status to PROCESSING
-            order.setStatus(OrderStatus.PROCESSING);
-            orderRepository.save(order);
-            log.info("Order {} status updated to PROCESSING", order.getId());
+    private boolean isConfigured(PaymentRetryEvent event) {
+        if (!retryPolicy.canRetry(event.getAttempt())) {
+            log.warn("Ignoring payment retry {} for order {}, only {} are configured",
+                    event.getAttempt(), event.getOrderId(), retryPolicy.getMaxAttempts());
+            return false;
+        }
+        return true;
+    }
 
-            // Simulate payment processing (5 second delay)
-            Thread.sleep(5000);
+    private boolean isProcessing(PaymentRetryEvent event) {
+        if (!orderRepository.existsByIdAndStatus(event.getOrderId(), OrderStatus.PROCESSING)) {
+            log.info("Order {} is no longer PROCESSING, payment retry {} dropped", event.getOrderId(), event.getAttempt());
+            return false;
+        }
+        return true;
+    }
 
-            // 50% success rate for payment
-            boolean paymentSuccess = Math.random() < 0.5;
+    private void deadLetter(ConsumerRecord<String, ?> record, Exception exception) {
+        try {
+            deadLetterService.deadLetter(record, null, exception);
+        } catch (Exception e) {
+            log.error("Could not dead-letter order event at {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+        }
+    }
 
-            if (paymentSuccess) {
-                order.setStatus(OrderStatus.COMPLETED);
-                orderRepository.save(order);
-                log.info("Order {} payment successful - status updated to COMPLETED", order.getId());
+    // Orders the batch did pick up are no longer PENDING, so their events are not handled twice
+    private void handleEach(List<ConsumerRecord<String, OrderCreatedEvent>> records) {
+        for (ConsumerRecord<String, OrderCreatedEvent> record : records) {
+            if (record.value() == null) {
+                // Dead-lettered with the batch already
+                continue;
+            }
+            try {
+                handleOrdersCreated(List.of(record));
+            } catch (Exception e) {
+                log.error("Error processing OrderCreatedEvent for order: {}", record.value().getOrderId(), e);
+                deadLetter(record, e);
+            }
+        }
+    }
 
-                // Publish OrderCompleted event
-                eventPublisher.publishOrderCompleted(order.getId());
+    private void handleOrdersCreated(List<ConsumerRecord<String, OrderCreatedEvent>> records) {
+        Set<Long> orderIds = new LinkedHashSet<>();
+        for (ConsumerRecord<String, OrderCreatedEvent> record : records) {
+            if (record.value() == null) {
+                // Batch listeners get records that could not be deserialized instead of the error handler
+                deadLetter(record, DeadLetterService.deserializationFailureOf(record));
             } else {
-                log.info("Order {} payment failed - remains in PROCESSING", order.getId());
-                // Order stays in PROCESSING - will be expired by scheduler if not retried
+                orderIds.add(record.value().getOrderId());
             }
+        }
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        log.info("Received OrderCreatedEvents for {} orders", orderIds.size());
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Payment processing interrupted for order: {}", event.getOrderId(), e);
-        } catch (Exception e) {
-            log.error("Error processing OrderCreatedEvent for order: {}", event.getOrderId(), e);
+        // Only PENDING orders are picked up, so a redelivered event does not start a second payment
+        List<Long> picked = transactionTemplate.execute(status -> {
+            List<Long> pending = orderRepository.lockIdsInStatus(orderIds, OrderStatus.PENDING.name());
+            if (!pending.isEmpty()) {
+                orderRepository.updateStatusByIdIn(pending, OrderStatus.PENDING, OrderStatus.PROCESSING, LocalDateTime.now());
+                eventPublisher.publishStatusChanges(pending, OrderStatus.PROCESSING);
+            }
+            return pending;
+        });
+        if (picked.size() < orderIds.size()) {
+            log.info("{} of {} orders are not PENDING, their events ignored", orderIds.size() - picked.size(), orderIds.size());
+        }
+        log.info("{} orders status updated to PROCESSING", picked.size());
+
+        // Payments run off the listener thread; the listener only blocks when too many payments are in flight
+        for (Long orderId : picked) {
+            try {
+                paymentProcessor.submit(orderId);
+            } catch (InterruptedException e) {
+                // The orders left without a payment are cleaned up by the expiration job
+                Thread.currentThread().interrupt();
+                log.error("Payment processing interrupted for order: {}", orderId, e);
+                return;
+            }
         }
     }
 }
@@ -1,69 +1,149 @@
 package com.example.ecommerce.service;
 
 import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.OutboxEvent;
 import com.example.ecommerce.event.OrderCompletedEvent;
 import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventType;
 import com.example.ecommerce.event.OrderExpiredEvent;
+import com.example.ecommerce.event.OrderStatusChangedEvent;
+import com.example.ecommerce.event.PaymentRetryEvent;
+import com.example.ecommerce.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
+/**
+ * Publishes order events through the transactional outbox: events are stored in the caller's
+ * transaction and sent to Kafka by {@link OutboxRelay} once committed, so an event goes out
+ * if and only if the change it describes was committed, and the broker is never on the
+ * request path. Events are keyed by order id and carry their {@link OrderEventType} in a header.
+ * <p>
+ * Every status change of an order also goes to the compacted {@value #STATUS_TOPIC} topic, and a
+ * deleted order's key gets a tombstone there, so the topic holds the current status of every order.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class OrderEventPublisher {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
-    private static final String TOPIC = "order-events";
+    public static final String TOPIC = "order-events";
+    public static final String STATUS_TOPIC = "order-status";
 
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional
     public void publishOrderCreated(Order order) {
-        try {
-            OrderCreatedEvent event = new OrderCreatedEvent(
-                order.getId(),
-                order.getUser().getId(),
-                order.getTotal(),
-                LocalDateTime.now()
-            );
+        OrderCreatedEvent event = new OrderCreatedEvent(
+            order.getId(),
+            order.getUser().getId(),
+            order.getTotal(),
+            LocalDateTime.now()
+        );
+        outboxEventRepository.saveAll(List.of(toOutboxEvent(order.getId(), OrderEventType.ORDER_CREATED, event),
+                toStatusEvent(order.getId(), order.getStatus(), event.getTimestamp())));
+        log.info("Queued OrderCreatedEvent for order: {}", order.getId());
+    }
 
-            kafkaTemplate.send(TOPIC, "order-created-" + order.getId(), event)
-                .thenAccept(result -> log.info("Published OrderCreatedEvent for order: {}", order.getId()))
-                .exceptionally(ex -> {
-                    log.error("Failed to publish OrderCreatedEvent for order: {}", order.getId(), ex);
-                    return null;
-                });
-        } catch (Exception e) {
-            log.error("Error publishing OrderCreatedEvent for order: {}", order.getId(), e);
+    @Transactional
+    public void publishOrdersCreated(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
         }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = new ArrayList<>(orders.size() * 2);
+        for (Order order : orders) {
+            OrderCreatedEvent event = new OrderCreatedEvent(order.getId(), order.getUser().getId(), order.getTotal(), now);
+            events.add(toOutboxEvent(order.getId(), OrderEventType.ORDER_CREATED, event));
+            events.add(toStatusEvent(order.getId(), order.getStatus(), now));
+        }
+        outboxEventRepository.saveAll(events);
+        log.info("Queued {} OrderCreatedEvents", orders.size());
     }
 
-    public void publishOrderCompleted(Long orderId) {
-        try {
-            OrderCompletedEvent event = new OrderCompletedEvent(orderId, LocalDateTime.now());
-            kafkaTemplate.send(TOPIC, "order-completed-" + orderId, event)
-                .thenAccept(result -> log.info("Published OrderCompletedEvent for order: {}", orderId))
-                .exceptionally(ex -> {
-                    log.error("Failed to publish OrderCompletedEvent for order: {}", orderId, ex);
-                    return null;
-                });
-        } catch (Exception e) {
-            log.error("Error publishing OrderCompletedEvent for order: {}", orderId, e);
+    @Transactional
+    public void publishOrdersCompleted(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
         }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = new ArrayList<>(orderIds.size() * 2);
+        for (Long orderId : orderIds) {
+            events.add(toOutboxEvent(orderId, OrderEventType.ORDER_COMPLETED, new OrderCompletedEvent(orderId, now)));
+            events.add(toStatusEvent(orderId, OrderStatus.COMPLETED, now));
+        }
+        outboxEventRepository.saveAll(events);
+        log.info("Queued {} OrderCompletedEvents", orderIds.size());
     }
 
+    @Transactional
     public void publishOrderExpired(Long orderId) {
+        OrderExpiredEvent event = new OrderExpiredEvent(orderId, LocalDateTime.now());
+        outboxEventRepository.saveAll(List.of(toOutboxEvent(orderId, OrderEventType.ORDER_EXPIRED, event),
+                toStatusEvent(orderId, OrderStatus.EXPIRED, event.getTimestamp())));
+        log.info("Queued OrderExpiredEvent for order: {}", orderId);
+    }
+
+    // For status changes that no other order event describes
+    @Transactional
+    public void publishStatusChanges(Collection<Long> orderIds, OrderStatus status) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = new ArrayList<>(orderIds.size());
+        for (Long orderId : orderIds) {
+            events.add(toStatusEvent(orderId, status, now));
+        }
+        outboxEventRepository.saveAll(events);
+        log.debug("Queued {} status changes to {}", orderIds.size(), status);
+    }
+
+    @Transactional
+    public void publishOrderDeleted(Long orderId) {
+        outboxEventRepository.save(toOutboxEvent(STATUS_TOPIC, orderId, OrderEventType.ORDER_STATUS_CHANGED, null));
+        log.debug("Queued status tombstone for deleted order: {}", orderId);
+    }
+
+    // Goes to the retry topic of the attempt (see PaymentRetryPolicy) rather than to order-events
+    @Transactional
+    public void publishPaymentRetry(Long orderId, int attempt, String topic) {
+        PaymentRetryEvent event = new PaymentRetryEvent(orderId, attempt, LocalDateTime.now());
+        outboxEventRepository.save(toOutboxEvent(topic, orderId, OrderEventType.PAYMENT_RETRY, event));
+        log.info("Queued PaymentRetryEvent {} for order: {}", attempt, orderId);
+    }
+
+    private OutboxEvent toOutboxEvent(Long orderId, OrderEventType type, Object event) {
+        return toOutboxEvent(TOPIC, orderId, type, event);
+    }
+
+    private OutboxEvent toStatusEvent(Long orderId, OrderStatus status, LocalDateTime updatedAt) {
+        return toOutboxEvent(STATUS_TOPIC, orderId, OrderEventType.ORDER_STATUS_CHANGED,
+                new OrderStatusChangedEvent(orderId, status, updatedAt));
+    }
+
+    // Every event of an order shares its key, so they land on one partition and are consumed in order
+    private OutboxEvent toOutboxEvent(String topic, Long orderId, OrderEventType type, Object event) {
         try {
-            OrderExpiredEvent event = new OrderExpiredEvent(orderId, LocalDateTime.now());
-            kafkaTemplate.send(TOPIC, "order-expired-" + orderId, event)
-                .thenAccept(result -> log.info("Published OrderExpiredEvent for order: {}", orderId))
-                .exceptionally(ex -> {
-                    log.error("Failed to publish OrderExpiredEvent for order: {}", orderId, ex);
-                    return null;
-                });
-        } catch (Exception e) {
-            log.error("Error publishing OrderExpiredEvent for order: {}", orderId, e);
+            OutboxEvent outboxEvent = new OutboxEvent();
+            outboxEvent.setTopic(topic);
+            outboxEvent.setMessageKey(String.valueOf(orderId));
+            outboxEvent.setEventType(type.getHeaderValue());
+            // A null event is a tombstone for the key
+            outboxEvent.setPayload(event != null ? objectMapper.writeValueAsString(event) : OrderEventTransport.TOMBSTONE);
+            return outboxEvent;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + event.getClass().getSimpleName(), e);
         }
     }
 }
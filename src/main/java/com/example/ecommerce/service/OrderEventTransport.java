@@ -0,0 +1,23 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.event.OrderEventType;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries order events from the {@link OutboxRelay} to the listeners: Kafka by default, or an in-process
+ * ring buffer on single-node deployments running the {@value InProcessOrderEventTransport#PROFILE} profile.
+ */
+public interface OrderEventTransport {
+
+    // Stored in place of an event whose key is gone, such as a deleted order's status; sent as a null value,
+    // which a compacted topic takes as a tombstone
+    String TOMBSTONE = "null";
+
+    // The payload is the event's JSON as stored in the outbox, or TOMBSTONE. The future completes once the
+    // transport has taken the event over; a payload that can never be sent throws IllegalArgumentException right away
+    CompletableFuture<?> send(String topic, String key, OrderEventType type, String payload);
+
+    // Pushes out sends still buffered, after a round of sends
+    void flush();
+}
@@ -11,6 +11,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Component
 @RequiredArgsConstructor
@@ -19,6 +21,7 @@ public class OrderExpirationScheduler {
 
     private final OrderRepository orderRepository;
     private final OrderEventPublisher eventPublisher;
+    private final InventoryService inventoryService;
 
     @Scheduled(fixedRate = 60000)
     @Transactional
@@ -37,6 +40,14 @@ public class OrderExpirationScheduler {
 
             log.info("Found {} orders to expire", expiredOrders.size());
 
+            // Expired orders give their stock back, summed per product so each product is updated once
+            Map<Long, Integer> releasedStock = new TreeMap<>();
+            for (Order order : expiredOrders) {
+                InventoryService.quantitiesOf(order.getItems())
+                    .forEach((productId, quantity) -> releasedStock.merge(productId, quantity, Integer::sum));
+            }
+            inventoryService.release(releasedStock);
+
             for (Order order : expiredOrders) {
                 order.setStatus(OrderStatus.EXPIRED);
                 orderRepository.save(order);
@@ -51,4 +62,16 @@ public class OrderExpirationScheduler {
             log.error("Error in expireOldOrders scheduled job", e);
         }
     }
+
+    // Expires one order right away, e.g. once its payment retries ran out; false when it is no longer PROCESSING
+    @Transactional
+    public boolean expireOrder(Long orderId) {
+        if (orderRepository.updateStatus(orderId, OrderStatus.PROCESSING, OrderStatus.EXPIRED, LocalDateTime.now()) == 0) {
+            return false;
+        }
+        orderRepository.findWithItemsById(orderId)
+            .ifPresent(order -> inventoryService.release(InventoryService.quantitiesOf(order.getItems())));
+        eventPublisher.publishOrderExpired(orderId);
+        return true;
+    }
 }
@@ -1,122 +1,444 @@
 package com.example.ecommerce.service;
 
+import com.example.ecommerce.dto.CursorPageDTO;
+import com.example.ecommerce.dto.order.OrderBatchResponseDTO;
+import com.example.ecommerce.dto.order.OrderBatchResultDTO;
 import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderItemRowDTO;
 import com.example.ecommerce.dto.order.OrderRequestDTO;
 import com.example.ecommerce.dto.order.OrderResponseDTO;
+import com.example.ecommerce.dto.order.OrderStatusDTO;
 import com.example.ecommerce.dto.order.OrderUpdateDTO;
+import com.example.ecommerce.dto.product.ProductSnapshotDTO;
 import com.example.ecommerce.entity.Order;
 import com.example.ecommerce.entity.OrderItem;
-import com.example.ecommerce.entity.Product;
+import com.example.ecommerce.entity.OrderStatus;
 import com.example.ecommerce.entity.User;
+import com.example.ecommerce.exception.InsufficientStockException;
+import com.example.ecommerce.exception.InvalidRequestException;
 import com.example.ecommerce.exception.ResourceNotFoundException;
+import com.example.ecommerce.repository.OrderItemRepository;
 import com.example.ecommerce.repository.OrderRepository;
 import com.example.ecommerce.repository.ProductRepository;
 import com.example.ecommerce.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class OrderService {
 
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    private static final int MAX_BATCH_SIZE = 5000;
+    private static final int BATCH_CHUNK_SIZE = 500;
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+
     private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final OrderEventPublisher orderEventPublisher;
+    private final InventoryService inventoryService;
+    private final ProductCatalogCache productCatalogCache;
+    private final OrderStatusStore orderStatusStore;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
 
     @Transactional
     public OrderResponseDTO createOrder(OrderRequestDTO requestDTO) {
         User user = userRepository.findById(requestDTO.getUserId())
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + requestDTO.getUserId()));
 
-        Order order = new Order();
-        order.setUser(user);
-        order.setTotal(requestDTO.getTotal());
-        order.setStatus(requestDTO.getStatus());
-
-        for (OrderItemDTO itemDTO : requestDTO.getItems()) {
-            Product product = productRepository.findById(itemDTO.getProductId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + itemDTO.getProductId()));
+        Map<Long, ProductSnapshotDTO> catalog = loadCatalog(requestDTO.getItems());
+        String pricingError = pricingError(requestDTO.getItems(), requestDTO.getTotal(), catalog);
+        if (pricingError != null) {
+            throw new InvalidRequestException(pricingError);
+        }
 
-            OrderItem orderItem = new OrderItem();
-            orderItem.setProduct(product);
-            orderItem.setQuantity(itemDTO.getQuantity());
-            orderItem.setPrice(itemDTO.getPrice());
-            order.addItem(orderItem);
+        Order order = buildOrder(requestDTO, user, catalog);
+        if (InventoryService.holdsStock(order.getStatus())) {
+            inventoryService.reserve(InventoryService.quantitiesOf(order.getItems()));
         }
 
-        Order savedOrder = orderRepository.save(order);
+        // Inserts are deferred with sequence ids; flushing here sends the order and its items as one
+        // JDBC batch and fills in the creation timestamps returned to the client
+        Order savedOrder = orderRepository.saveAndFlush(order);
         orderEventPublisher.publishOrderCreated(savedOrder);
         return mapToResponseDTO(savedOrder);
     }
 
+    public OrderBatchResponseDTO createOrders(List<OrderRequestDTO> requests) {
+        if (requests.isEmpty() || requests.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRequestException("A batch must contain between 1 and " + MAX_BATCH_SIZE + " orders");
+        }
+
+        OrderBatchResultDTO[] results = new OrderBatchResultDTO[requests.size()];
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String error = validate(requests.get(i));
+            if (error != null) {
+                results[i] = new OrderBatchResultDTO(i, false, null, error);
+            } else {
+                valid.add(i);
+            }
+        }
+
+        // Resolve every referenced user and product with one query each instead of one per order/item
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        for (int i : valid) {
+            userIds.add(requests.get(i).getUserId());
+            requests.get(i).getItems().forEach(item -> productIds.add(item.getProductId()));
+        }
+        Set<Long> knownUserIds = userRepository.findAllById(userIds).stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        Map<Long, ProductSnapshotDTO> catalog = productCatalogCache.getAll(productIds);
+
+        List<Integer> resolved = new ArrayList<>();
+        for (int i : valid) {
+            OrderRequestDTO request = requests.get(i);
+            Long missingProductId = request.getItems().stream()
+                    .map(OrderItemDTO::getProductId)
+                    .filter(productId -> !catalog.containsKey(productId))
+                    .findFirst()
+                    .orElse(null);
+            if (!knownUserIds.contains(request.getUserId())) {
+                results[i] = new OrderBatchResultDTO(i, false, null, "User not found with id: " + request.getUserId());
+            } else if (missingProductId != null) {
+                results[i] = new OrderBatchResultDTO(i, false, null, "Product not found with id: " + missingProductId);
+            } else {
+                String pricingError = pricingError(request.getItems(), request.getTotal(), catalog);
+                if (pricingError != null) {
+                    results[i] = new OrderBatchResultDTO(i, false, null, pricingError);
+                } else {
+                    resolved.add(i);
+                }
+            }
+        }
+
+        // Each chunk is one transaction whose inserts go out as JDBC batches; a failing chunk does not
+        // affect the ones already committed
+        List<Order> createdOrders = new ArrayList<>();
+        for (int from = 0; from < resolved.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = resolved.subList(from, Math.min(from + BATCH_CHUNK_SIZE, resolved.size()));
+            createdOrders.addAll(persistChunkOrEach(requests, chunk, catalog, results));
+        }
+
+        return new OrderBatchResponseDTO(createdOrders.size(), requests.size() - createdOrders.size(), List.of(results));
+    }
+
     @Transactional(readOnly = true)
     public OrderResponseDTO getOrderById(Long id) {
-        Order order = orderRepository.findById(id)
+        OrderResponseDTO order = orderRepository.findSummaryById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + id));
+        attachItems(List.of(order));
+        return order;
+    }
+
+    // From the status store when it holds the order; while it is catching up, and for orders it does not
+    // hold (unchanged since the status topic was introduced, or finished a while ago), from the database
+    public OrderStatusDTO getOrderStatus(Long id) {
+        return orderStatusStore.find(id)
+                .or(() -> orderRepository.findStatusById(id))
                 .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + id));
-        return mapToResponseDTO(order);
     }
 
     @Transactional(readOnly = true)
-    public List<OrderResponseDTO> getAllOrders() {
-        return orderRepository.findAll().stream()
-                .map(this::mapToResponseDTO)
-                .collect(Collectors.toList());
+    public CursorPageDTO<OrderResponseDTO> getAllOrders(String after, Integer limit) {
+        long afterId = CursorPagination.decodeAfter(after);
+        int pageSize = CursorPagination.normalizeLimit(limit);
+        List<OrderResponseDTO> orders = orderRepository.findSummariesAfter(afterId, CursorPagination.probe(pageSize));
+        CursorPageDTO<OrderResponseDTO> page =
+                CursorPagination.toPage(orders, pageSize, OrderResponseDTO::getId, Function.identity());
+        attachItems(page.getItems());
+        return page;
     }
 
     @Transactional(readOnly = true)
-    public List<OrderResponseDTO> getOrdersByUserId(Long userId) {
+    public CursorPageDTO<OrderResponseDTO> getOrdersByUserId(Long userId, String after, Integer limit) {
         if (!userRepository.existsById(userId)) {
             throw new ResourceNotFoundException("User not found with id: " + userId);
         }
-        return orderRepository.findByUserId(userId).stream()
-                .map(this::mapToResponseDTO)
-                .collect(Collectors.toList());
+        long afterId = CursorPagination.decodeAfter(after);
+        int pageSize = CursorPagination.normalizeLimit(limit);
+        List<OrderResponseDTO> orders = orderRepository.findSummariesByUserIdAfter(
+                userId, afterId, CursorPagination.probe(pageSize));
+        CursorPageDTO<OrderResponseDTO> page =
+                CursorPagination.toPage(orders, pageSize, OrderResponseDTO::getId, Function.identity());
+        attachItems(page.getItems());
+        return page;
+    }
+
+    @Transactional(readOnly = true)
+    public long exportOrders(OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        List<OrderResponseDTO> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        long exported = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<OrderResponseDTO> orders = orderRepository.streamSummariesForExport()) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            // Projections never enter the persistence context; only the current chunk is held in memory
+            Iterator<OrderResponseDTO> iterator = orders.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == EXPORT_CHUNK_SIZE || !iterator.hasNext()) {
+                    attachItems(chunk);
+                    for (OrderResponseDTO order : chunk) {
+                        writer.writeValue(generator, order);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                    exported += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+        return exported;
     }
 
     @Transactional
     public OrderResponseDTO updateOrder(Long id, OrderUpdateDTO updateDTO) {
-        Order order = orderRepository.findById(id)
+        Order order = orderRepository.findWithItemsById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + id));
+        Map<Long, Integer> heldBefore = heldStock(order);
 
-        if (updateDTO.getTotal() != null) {
-            order.setTotal(updateDTO.getTotal());
-        }
-
-        if (updateDTO.getStatus() != null) {
+        if (updateDTO.getStatus() != null && updateDTO.getStatus() != order.getStatus()) {
             order.setStatus(updateDTO.getStatus());
+            orderEventPublisher.publishStatusChanges(List.of(id), updateDTO.getStatus());
         }
 
         if (updateDTO.getItems() != null) {
-            order.getItems().clear();
+            Map<Long, ProductSnapshotDTO> catalog = loadCatalog(updateDTO.getItems());
+            String pricingError = pricingError(updateDTO.getItems(), null, catalog);
+            if (pricingError != null) {
+                throw new InvalidRequestException(pricingError);
+            }
 
+            order.getItems().clear();
             for (OrderItemDTO itemDTO : updateDTO.getItems()) {
-                Product product = productRepository.findById(itemDTO.getProductId())
-                        .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + itemDTO.getProductId()));
-
                 OrderItem orderItem = new OrderItem();
-                orderItem.setProduct(product);
+                orderItem.setProduct(productRepository.getReferenceById(itemDTO.getProductId()));
                 orderItem.setQuantity(itemDTO.getQuantity());
-                orderItem.setPrice(itemDTO.getPrice());
+                orderItem.setPrice(catalog.get(itemDTO.getProductId()).getPrice());
                 order.addItem(orderItem);
             }
         }
 
+        // The total always follows the items; a total sent by the client must agree with it
+        if (updateDTO.getItems() != null || updateDTO.getTotal() != null) {
+            BigDecimal total = totalOf(order.getItems());
+            if (updateDTO.getTotal() != null && updateDTO.getTotal().compareTo(total) != 0) {
+                throw new InvalidRequestException("Order total must be " + total + ", was " + updateDTO.getTotal());
+            }
+            order.setTotal(total);
+        }
+
+        // Status and item changes are settled against stock in one pass over the affected products
+        inventoryService.adjust(InventoryService.difference(heldStock(order), heldBefore));
+
         Order updatedOrder = orderRepository.save(order);
         return mapToResponseDTO(updatedOrder);
     }
 
     @Transactional
     public void deleteOrder(Long id) {
-        if (!orderRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Order not found with id: " + id);
+        Order order = orderRepository.findWithItemsById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + id));
+
+        // Open orders give their reservation back; completed orders were sold and keep it
+        if (order.getStatus() == OrderStatus.PENDING || order.getStatus() == OrderStatus.PROCESSING) {
+            inventoryService.release(InventoryService.quantitiesOf(order.getItems()));
         }
-        orderRepository.deleteById(id);
+        orderRepository.delete(order);
+        orderEventPublisher.publishOrderDeleted(id);
+    }
+
+    // Loads the items of all given orders with a single query, whatever the number of orders or items
+    private void attachItems(List<OrderResponseDTO> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        Map<Long, OrderResponseDTO> ordersById = new HashMap<>();
+        for (OrderResponseDTO order : orders) {
+            order.setItems(new ArrayList<>());
+            ordersById.put(order.getId(), order);
+        }
+        for (OrderItemRowDTO row : orderItemRepository.findRowsByOrderIdIn(ordersById.keySet())) {
+            ordersById.get(row.getOrderId()).getItems().add(new OrderItemDTO(
+                    row.getId(), row.getProductId(), row.getProductName(), row.getQuantity(), row.getPrice()));
+        }
+    }
+
+    // Persists the chunk in one transaction; if that fails, each of its orders is retried in a transaction
+    // of its own, so only the orders that cannot be saved are reported as failed
+    private List<Order> persistChunkOrEach(List<OrderRequestDTO> requests, List<Integer> chunk,
+                                           Map<Long, ProductSnapshotDTO> catalog, OrderBatchResultDTO[] results) {
+        ChunkOutcome outcome;
+        try {
+            outcome = persistChunk(requests, chunk, catalog);
+        } catch (RuntimeException e) {
+            if (chunk.size() == 1) {
+                int i = chunk.get(0);
+                log.error("Failed to persist order {} of the batch", i, e);
+                results[i] = new OrderBatchResultDTO(i, false, null, "Order could not be saved");
+                return List.of();
+            }
+            log.warn("Failed to persist batch chunk of {} orders, saving them one by one", chunk.size(), e);
+            List<Order> orders = new ArrayList<>();
+            for (int i : chunk) {
+                orders.addAll(persistChunkOrEach(requests, List.of(i), catalog, results));
+            }
+            return orders;
+        }
+
+        outcome.rejected().forEach((i, error) -> results[i] = new OrderBatchResultDTO(i, false, null, error));
+        for (int k = 0; k < outcome.indices().size(); k++) {
+            int i = outcome.indices().get(k);
+            results[i] = new OrderBatchResultDTO(i, true, outcome.orders().get(k).getId(), null);
+        }
+        return outcome.orders();
+    }
+
+    private ChunkOutcome persistChunk(List<OrderRequestDTO> requests, List<Integer> chunk,
+                                      Map<Long, ProductSnapshotDTO> catalog) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    ChunkOutcome outcome = new ChunkOutcome(new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+                    for (int i : chunk) {
+                        OrderRequestDTO request = requests.get(i);
+                        User user = userRepository.getReferenceById(request.getUserId());
+                        Order order = buildOrder(request, user, catalog);
+                        if (InventoryService.holdsStock(order.getStatus())) {
+                            try {
+                                inventoryService.reserve(InventoryService.quantitiesOf(order.getItems()));
+                            } catch (InsufficientStockException e) {
+                                outcome.rejected().put(i, e.getMessage());
+                                continue;
+                            }
+                        }
+                        outcome.indices().add(i);
+                        outcome.orders().add(order);
+                    }
+                    orderRepository.saveAll(outcome.orders());
+                    orderEventPublisher.publishOrdersCreated(outcome.orders());
+                    return outcome;
+                });
+            } catch (PessimisticLockingFailureException e) {
+                // Each order locks its products in id order, but orders within a chunk do not, so two
+                // concurrent chunks can deadlock; the database aborts one of them and it is retried
+                if (attempt >= MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Lock conflict persisting batch chunk, retrying (attempt {})", attempt);
+            }
+        }
+    }
+
+    private Map<Long, Integer> heldStock(Order order) {
+        return InventoryService.holdsStock(order.getStatus())
+                ? InventoryService.quantitiesOf(order.getItems())
+                : Map.of();
+    }
+
+    // Resolves every product the items reference from the cache, loading all misses with one query
+    private Map<Long, ProductSnapshotDTO> loadCatalog(List<OrderItemDTO> items) {
+        Set<Long> productIds = items.stream()
+                .map(OrderItemDTO::getProductId)
+                .collect(Collectors.toSet());
+        Map<Long, ProductSnapshotDTO> catalog = productCatalogCache.getAll(productIds);
+        for (OrderItemDTO item : items) {
+            if (!catalog.containsKey(item.getProductId())) {
+                throw new ResourceNotFoundException("Product not found with id: " + item.getProductId());
+            }
+        }
+        return catalog;
+    }
+
+    // Prices come from the catalog; the prices and total sent by the client are only checked against it
+    private String pricingError(List<OrderItemDTO> items, BigDecimal total, Map<Long, ProductSnapshotDTO> catalog) {
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        for (OrderItemDTO item : items) {
+            BigDecimal price = catalog.get(item.getProductId()).getPrice();
+            if (item.getPrice().compareTo(price) != 0) {
+                return "Price for product with id: " + item.getProductId() + " must be " + price + ", was " + item.getPrice();
+            }
+            expectedTotal = expectedTotal.add(price.multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        if (total != null && total.compareTo(expectedTotal) != 0) {
+            return "Order total must be " + expectedTotal + ", was " + total;
+        }
+        return null;
+    }
+
+    private static BigDecimal totalOf(List<OrderItem> items) {
+        return items.stream()
+                .map(item -> item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    // Items reference products by id only; prices come from the catalog, so no product row is loaded
+    private Order buildOrder(OrderRequestDTO requestDTO, User user, Map<Long, ProductSnapshotDTO> catalog) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setStatus(requestDTO.getStatus());
+
+        for (OrderItemDTO itemDTO : requestDTO.getItems()) {
+            OrderItem orderItem = new OrderItem();
+            orderItem.setProduct(productRepository.getReferenceById(itemDTO.getProductId()));
+            orderItem.setQuantity(itemDTO.getQuantity());
+            orderItem.setPrice(catalog.get(itemDTO.getProductId()).getPrice());
+            order.addItem(orderItem);
+        }
+        order.setTotal(totalOf(order.getItems()));
+        return order;
+    }
+
+    private String validate(OrderRequestDTO requestDTO) {
+        if (requestDTO == null) {
+            return "Order must not be null";
+        }
+        Set<ConstraintViolation<OrderRequestDTO>> violations = validator.validate(requestDTO);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private record ChunkOutcome(List<Integer> indices, List<Order> orders, Map<Integer, String> rejected) {
     }
 
     private OrderResponseDTO mapToResponseDTO(Order order) {
@@ -128,12 +450,18 @@ public class OrderService {
         dto.setCreatedAt(order.getCreatedAt());
         dto.setUpdatedAt(order.getUpdatedAt());
 
+        // Names come from the product cache, so items that only hold a product reference stay unloaded
+        Map<Long, ProductSnapshotDTO> products = productCatalogCache.getAll(order.getItems().stream()
+                .map(item -> item.getProduct().getId())
+                .toList());
+
         List<OrderItemDTO> itemDTOs = new ArrayList<>();
         for (OrderItem item : order.getItems()) {
+            ProductSnapshotDTO product = products.get(item.getProduct().getId());
             OrderItemDTO itemDTO = new OrderItemDTO();
             itemDTO.setId(item.getId());
             itemDTO.setProductId(item.getProduct().getId());
-            itemDTO.setProductName(item.getProduct().getName());
+            itemDTO.setProductName(product != null ? product.getName() : null);
             itemDTO.setQuantity(item.getQuantity());
             itemDTO.setPrice(item.getPrice());
             itemDTOs.add(itemDTO);
@@ -0,0 +1,159 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.order.OrderStatusDTO;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.event.OrderEventDeserializer;
+import com.example.ecommerce.event.OrderStatusChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This instance's copy of the compacted {@value OrderEventPublisher#STATUS_TOPIC} topic: the current status
+ * of orders by id, so most status polls are answered from memory without touching the database. Every
+ * instance assigns itself all partitions of the topic and reads them from the start, which rebuilds the
+ * store on startup, and then follows them; a tombstone removes a deleted order. Until the rebuild has reached the
+ * end offsets the topic had when it started, the store answers nothing, so callers fall back to the
+ * database instead of seeing a status the replay has not caught up on. Completed and expired orders no
+ * longer change, so they are dropped once their status is older than {@code order-status.store.terminal-ttl},
+ * which bounds the store by the orders still in progress plus the recently finished ones. The store lags
+ * the database by the outbox relay's delay, so an order may show its previous status for a moment.
+ */
+@Service
+@Slf4j
+public class OrderStatusStore implements ConsumerSeekAware {
+
+    public static final String LISTENER_ID = "order-status-store";
+
+    private final Map<Long, OrderStatusDTO> statuses = new ConcurrentHashMap<>();
+    // End offset each partition must be read up to before the store is used
+    private final Map<TopicPartition, Long> catchingUp = new ConcurrentHashMap<>();
+    private final ConsumerFactory<?, ?> consumerFactory;
+    private final Duration terminalTtl;
+    private volatile boolean ready;
+
+    public OrderStatusStore(ConsumerFactory<?, ?> consumerFactory,
+                            @Value("${order-status.store.terminal-ttl:1h}") Duration terminalTtl) {
+        this.consumerFactory = consumerFactory;
+        this.terminalTtl = terminalTtl;
+    }
+
+    // Empty while the store is still catching up, as well as for orders it does not hold
+    public Optional<OrderStatusDTO> find(Long orderId) {
+        return ready ? Optional.ofNullable(statuses.get(orderId)) : Optional.empty();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return statuses.size();
+    }
+
+    // The in-process ring only carries changes made after this start, so there is nothing to catch up on
+    public void markCaughtUp() {
+        catchingUp.clear();
+        ready = true;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (ready) {
+            return;
+        }
+        Map<TopicPartition, Long> endOffsets;
+        try (Consumer<?, ?> consumer = consumerFactory.createConsumer(LISTENER_ID + "-catch-up", null)) {
+            endOffsets = consumer.endOffsets(assignments.keySet());
+        }
+        endOffsets.forEach((partition, end) -> {
+            if (assignments.get(partition) < end) {
+                catchingUp.put(partition, end);
+            }
+        });
+        log.info("Rebuilding order statuses from {} up to {}", OrderEventPublisher.STATUS_TOPIC, endOffsets);
+        checkCaughtUp(null);
+    }
+
+    // Every partition of the topic, read from the start on each start; the consumer has no group and commits nothing
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, containerFactory = "groupLessContainerFactory", batch = "true",
+            topicPartitions = @org.springframework.kafka.annotation.TopicPartition(topic = OrderEventPublisher.STATUS_TOPIC,
+                    partitions = "#{'0-' + (${kafka.order-events.partitions:6} - 1)}",
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0")),
+            properties = {
+                    "auto.offset.reset=earliest",
+                    "spring.deserializer.value.delegate.class=com.example.ecommerce.event.OrderEventDeserializer",
+                    OrderEventDeserializer.ACCEPTED_TYPES_CONFIG + "=ORDER_STATUS_CHANGED"
+            })
+    public void handleStatusChanges(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        for (ConsumerRecord<String, Object> record : records) {
+            if (record.value() == null && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                // Skipped rather than taken as a tombstone; the order's next change puts it right
+                log.warn("Unreadable order status at {}-{}@{}", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            apply(record.key(), record.value());
+        }
+        checkCaughtUp(consumer);
+    }
+
+    // Takes one record of the topic: a status change, or null for a tombstone
+    public void apply(String key, Object event) {
+        if (event instanceof OrderStatusChangedEvent changed) {
+            if (isExpired(changed.getStatus(), changed.getUpdatedAt(), LocalDateTime.now())) {
+                // Replayed long after the order finished; the database answers for it
+                statuses.remove(changed.getOrderId());
+                return;
+            }
+            statuses.put(changed.getOrderId(), new OrderStatusDTO(changed.getOrderId(), changed.getStatus(), changed.getUpdatedAt()));
+        } else if (event == null && key != null) {
+            statuses.remove(Long.valueOf(key));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${order-status.store.cleanup-interval-ms:60000}")
+    public void dropExpiredStatuses() {
+        LocalDateTime now = LocalDateTime.now();
+        int before = statuses.size();
+        statuses.values().removeIf(status -> isExpired(status.getStatus(), status.getUpdatedAt(), now));
+        int dropped = before - statuses.size();
+        if (dropped > 0) {
+            log.debug("Dropped {} finished orders from the status store, {} left", dropped, statuses.size());
+        }
+    }
+
+    private boolean isExpired(OrderStatus status, LocalDateTime updatedAt, LocalDateTime now) {
+        return (status == OrderStatus.COMPLETED || status == OrderStatus.EXPIRED)
+                && updatedAt != null && updatedAt.plus(terminalTtl).isBefore(now);
+    }
+
+    // Positions rather than record offsets, so a tail removed by compaction cannot hold the store back
+    private void checkCaughtUp(Consumer<?, ?> consumer) {
+        if (ready) {
+            return;
+        }
+        if (consumer != null) {
+            catchingUp.entrySet().removeIf(partition -> consumer.position(partition.getKey()) >= partition.getValue());
+        }
+        if (catchingUp.isEmpty()) {
+            ready = true;
+            log.info("Order status store caught up with {} statuses", statuses.size());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.OutboxEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.OutboxEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the outbox to the {@link OrderEventTransport}. Each round locks the oldest pending events
+ * (skipping rows another instance is relaying), sends them all asynchronously so they leave in
+ * producer batches, waits for the acknowledgements and deletes the acknowledged rows with one
+ * statement. Delivery is at-least-once: an event whose acknowledgement is lost is sent again in a
+ * later round.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OrderEventTransport transport;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       OrderEventTransport transport,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${outbox.relay.batch-size:500}") int batchSize,
+                       @Value("${outbox.relay.send-timeout-ms:30000}") long sendTimeoutMs) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.transport = transport;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:200}")
+    public void relay() {
+        // Keep draining while rounds come back full, so a backlog is cleared without waiting for the next tick
+        Integer relayed;
+        do {
+            relayed = transactionTemplate.execute(status -> relayBatch());
+        } while (relayed != null && relayed == batchSize);
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> events = outboxEventRepository.lockOldest(batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        // Sends are issued back to back so they leave in producer batches; a send that fails outright
+        // (e.g. the broker is unreachable) ends the round instead of blocking on every remaining event
+        List<CompletableFuture<?>> sends = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            try {
+                sends.add(send(event));
+            } catch (Exception e) {
+                log.warn("Failed to relay outbox event {} ({}), will retry: {}", event.getId(), event.getEventType(), e.getMessage());
+                break;
+            }
+        }
+        transport.flush();
+
+        // Only the acknowledged prefix is deleted, so a failed event is retried before anything queued after it
+        List<Long> done = new ArrayList<>(sends.size());
+        for (int i = 0; i < sends.size(); i++) {
+            OutboxEvent event = events.get(i);
+            if (sends.get(i) == null) {
+                done.add(event.getId());
+                continue;
+            }
+            try {
+                sends.get(i).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                done.add(event.getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("Failed to relay outbox event {} ({}), will retry: {}", event.getId(), event.getEventType(), e.getMessage());
+                break;
+            }
+        }
+
+        if (!done.isEmpty()) {
+            outboxEventRepository.deleteByIdIn(done);
+        }
+        log.debug("Relayed {} of {} outbox events", done.size(), events.size());
+        return done.size();
+    }
+
+    // Returns null for a row that can never be sent; it is dropped so it does not block the outbox
+    private CompletableFuture<?> send(OutboxEvent event) {
+        OrderEventType type = OrderEventType.fromHeaderValue(event.getEventType()).orElse(null);
+        if (type == null) {
+            log.error("Dropping outbox event {} with unknown type {}", event.getId(), event.getEventType());
+            return null;
+        }
+        try {
+            return transport.send(event.getTopic(), event.getMessageKey(), type, event.getPayload());
+        } catch (IllegalArgumentException e) {
+            log.error("Dropping outbox event {} with unreadable payload", event.getId(), e);
+            return null;
+        }
+    }
+}
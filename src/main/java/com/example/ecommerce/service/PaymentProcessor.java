@@ -0,0 +1,192 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.repository.OrderRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulated payment stage. A payment is a scheduled completion rather than a sleeping thread, so
+ * a few threads can keep thousands of payments in flight. The number in flight is bounded: when
+ * the bound is reached, {@link #submit} blocks the caller (the Kafka listener) until a payment
+ * settles, which holds back polling instead of queueing without limit. A failed payment is handed to
+ * the {@link PaymentRetryPolicy}'s next retry topic, or expires the order once no retry is left.
+ * A retry consumed from Kafka is tried with {@link #retryNow} once its record is due, on the scheduler
+ * like any payment; its future completes once the next retry or the expiry are stored, and only then is
+ * the record's offset committed.
+ * <p>
+ * Successful payments are completed in batches: every {@code payment.completion-batch-ms} the orders
+ * paid since the last batch move to COMPLETED with one locking select and one set-based update, and
+ * their completion events are stored in the same transaction with one batched insert, so the relay
+ * sends them to Kafka together. A payment counts as in flight until its batch committed.
+ */
+@Service
+@Slf4j
+public class PaymentProcessor {
+
+    private final OrderRepository orderRepository;
+    private final OrderEventPublisher eventPublisher;
+    private final PaymentRetryPolicy retryPolicy;
+    private final OrderExpirationScheduler expirationScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final long processingDelayMs;
+    private final double successRate;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler;
+    // Orders whose payment succeeded, waiting for the next completion batch
+    private final ConcurrentLinkedQueue<Long> paid = new ConcurrentLinkedQueue<>();
+
+    public PaymentProcessor(OrderRepository orderRepository,
+                            OrderEventPublisher eventPublisher,
+                            PaymentRetryPolicy retryPolicy,
+                            OrderExpirationScheduler expirationScheduler,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${payment.processing-delay-ms:5000}") long processingDelayMs,
+                            @Value("${payment.success-rate:0.5}") double successRate,
+                            @Value("${payment.max-in-flight:10000}") int maxInFlight,
+                            @Value("${payment.threads:2}") int threads,
+                            @Value("${payment.completion-batch-ms:50}") long completionBatchMs) {
+        this.orderRepository = orderRepository;
+        this.eventPublisher = eventPublisher;
+        this.retryPolicy = retryPolicy;
+        this.expirationScheduler = expirationScheduler;
+        this.transactionTemplate = transactionTemplate;
+        this.processingDelayMs = processingDelayMs;
+        this.successRate = successRate;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "payment-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::completePaid, completionBatchMs, completionBatchMs, TimeUnit.MILLISECONDS);
+    }
+
+    // The order must already be durably PROCESSING; if this node stops first, the expiration job cleans it up
+    public void submit(Long orderId) throws InterruptedException {
+        schedule(orderId, 0, 0);
+    }
+
+    // Retries the payment once the retry's backoff, of which waitMs is still left, has passed. The wait is
+    // only kept in memory, so this is for in-process events, which are lost with the process anyway
+    public void retry(Long orderId, int attempt, long waitMs) throws InterruptedException {
+        schedule(orderId, attempt, Math.max(0, waitMs));
+    }
+
+    // Tries a due retry; the future completes once its failure is stored, or exceptionally if storing it failed. A successful
+    // payment is completed with the next batch, or cleaned up by the expiration job if this node stops first
+    public CompletableFuture<Void> retryNow(Long orderId, int attempt) throws InterruptedException {
+        return schedule(orderId, attempt, 0);
+    }
+
+    private CompletableFuture<Void> schedule(Long orderId, int attempt, long waitMs) throws InterruptedException {
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        inFlight.acquire();
+        try {
+            scheduler.schedule(() -> settle(orderId, attempt, settled), waitMs + processingDelayMs, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        return settled;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // Payments already made still complete their orders
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        completePaid();
+    }
+
+    // attempt is 0 for the first payment and the retry number after that
+    private void settle(Long orderId, int attempt, CompletableFuture<Void> settled) {
+        boolean paymentSuccess = false;
+        try {
+            paymentSuccess = attemptPayment(orderId, attempt);
+            settled.complete(null);
+        } catch (Exception e) {
+            log.error("Error settling payment for order: {}", orderId, e);
+            settled.completeExceptionally(e);
+        } finally {
+            if (!paymentSuccess) {
+                inFlight.release();
+            }
+        }
+    }
+
+    // A successful payment stays in flight until its completion batch committed
+    private boolean attemptPayment(Long orderId, int attempt) {
+        if (ThreadLocalRandom.current().nextDouble() < successRate) {
+            paid.add(orderId);
+            return true;
+        }
+        handleFailure(orderId, attempt + 1);
+        return false;
+    }
+
+    // The status changes and their events commit together; orders expired or deleted meanwhile are left alone
+    private void completePaid() {
+        List<Long> orderIds = new ArrayList<>();
+        for (Long orderId = paid.poll(); orderId != null; orderId = paid.poll()) {
+            orderIds.add(orderId);
+        }
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> completed = transactionTemplate.execute(status -> {
+                List<Long> processing = orderRepository.lockIdsInStatus(orderIds, OrderStatus.PROCESSING.name());
+                if (!processing.isEmpty()) {
+                    orderRepository.updateStatusByIdIn(processing, OrderStatus.PROCESSING, OrderStatus.COMPLETED, LocalDateTime.now());
+                    eventPublisher.publishOrdersCompleted(processing);
+                }
+                return processing;
+            });
+            log.info("{} orders payment successful - status updated to COMPLETED", completed.size());
+            if (completed.size() < orderIds.size()) {
+                log.info("{} of {} paid orders are no longer PROCESSING, their payment results discarded",
+                        orderIds.size() - completed.size(), orderIds.size());
+            }
+        } catch (Exception e) {
+            // The orders stay PROCESSING and are cleaned up by the expiration job
+            log.error("Error completing payments for orders: {}", orderIds, e);
+        } finally {
+            inFlight.release(orderIds.size());
+        }
+    }
+
+    private void handleFailure(Long orderId, int nextAttempt) {
+        if (retryPolicy.canRetry(nextAttempt)) {
+            // The order stays PROCESSING while the retry waits on its topic
+            eventPublisher.publishPaymentRetry(orderId, nextAttempt, retryPolicy.topicOf(nextAttempt));
+            log.info("Order {} payment failed - retry {} of {} in {}", orderId, nextAttempt,
+                    retryPolicy.getMaxAttempts(), retryPolicy.delayOf(nextAttempt));
+        } else if (expirationScheduler.expireOrder(orderId)) {
+            log.info("Order {} payment failed after {} retries - order expired", orderId, retryPolicy.getMaxAttempts());
+        } else {
+            log.info("Order {} is no longer PROCESSING, payment result discarded", orderId);
+        }
+    }
+}
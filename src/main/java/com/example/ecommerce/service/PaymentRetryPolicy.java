@@ -0,0 +1,51 @@
+package com.example.ecommerce.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Backoff for failed payments. Retry n waits for the n-th configured delay and travels through its
+ * own topic, {@code order-events-retry-<delay>} (e.g. {@code order-events-retry-30s}), so every
+ * record on a retry topic waits equally long and a slow tier never holds up a faster one. After the
+ * last retry fails the order is expired right away instead of waiting for the expiration job.
+ */
+@Component
+public class PaymentRetryPolicy {
+
+    public static final String TOPIC_PREFIX = OrderEventPublisher.TOPIC + "-retry-";
+
+    private final List<String> delays;
+
+    public PaymentRetryPolicy(@Value("${payment.retry.delays:5s,30s,2m}") List<String> delays) {
+        this.delays = delays.stream().map(String::trim).filter(delay -> !delay.isEmpty()).toList();
+        if (this.delays.isEmpty()) {
+            throw new IllegalArgumentException("payment.retry.delays needs at least one delay");
+        }
+        this.delays.forEach(DurationStyle::detectAndParse);
+    }
+
+    public int getMaxAttempts() {
+        return delays.size();
+    }
+
+    public boolean canRetry(int attempt) {
+        return attempt >= 1 && attempt <= delays.size();
+    }
+
+    public Duration delayOf(int attempt) {
+        return DurationStyle.detectAndParse(delays.get(attempt - 1));
+    }
+
+    public String topicOf(int attempt) {
+        return TOPIC_PREFIX + delays.get(attempt - 1);
+    }
+
+    // Referenced by the retry listener and the topic configuration
+    public List<String> getTopics() {
+        return delays.stream().map(delay -> TOPIC_PREFIX + delay).toList();
+    }
+}
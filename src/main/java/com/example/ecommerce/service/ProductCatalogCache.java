@@ -0,0 +1,137 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.product.ProductCacheStatsDTO;
+import com.example.ecommerce.dto.product.ProductSnapshotDTO;
+import com.example.ecommerce.entity.Product;
+import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.ProductStockShardRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded read-through cache of products in front of {@link ProductRepository}. Entries expire
+ * after a fixed TTL and are evicted by the product write paths. Stock in a cached entry can lag
+ * behind reservations by up to the TTL; reservations themselves always check the database.
+ */
+@Component
+@Slf4j
+public class ProductCatalogCache {
+
+    private final ProductRepository productRepository;
+    private final ProductStockShardRepository stockShardRepository;
+    private final LoadingCache<Long, ProductSnapshotDTO> cache;
+    private final long maximumSize;
+
+    public ProductCatalogCache(ProductRepository productRepository,
+                               ProductStockShardRepository stockShardRepository,
+                               @Value("${product-cache.maximum-size:10000}") long maximumSize,
+                               @Value("${product-cache.expire-after-write:30s}") Duration expireAfterWrite) {
+        this.productRepository = productRepository;
+        this.stockShardRepository = stockShardRepository;
+        this.maximumSize = maximumSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public ProductSnapshotDTO load(Long id) {
+                        return loadAll(Set.of(id)).get(id);
+                    }
+
+                    @Override
+                    public Map<Long, ProductSnapshotDTO> loadAll(Set<? extends Long> ids) {
+                        return ProductCatalogCache.this.loadAll(ids);
+                    }
+                });
+    }
+
+    // Returns null for unknown products; misses for unknown ids are not cached
+    public ProductSnapshotDTO get(Long id) {
+        return cache.get(id);
+    }
+
+    // Missing products are absent from the result; all misses are loaded with one query
+    public Map<Long, ProductSnapshotDTO> getAll(Collection<Long> ids) {
+        return cache.getAll(ids);
+    }
+
+    /**
+     * Evicts the product now and again once the current transaction commits, so a concurrent
+     * read cannot put the pre-commit row back into the cache.
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    // Drops the entry without transaction hooks, for changes already committed elsewhere
+    public void evictLocal(Long id) {
+        cache.invalidate(id);
+    }
+
+    public ProductCacheStatsDTO stats() {
+        CacheStats stats = cache.stats();
+        return new ProductCacheStatsDTO(
+                cache.estimatedSize(),
+                maximumSize,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.loadSuccessCount(),
+                stats.loadFailureCount(),
+                stats.averageLoadPenalty() / 1_000_000.0,
+                stats.evictionCount()
+        );
+    }
+
+    private Map<Long, ProductSnapshotDTO> loadAll(Set<? extends Long> ids) {
+        List<Product> products = productRepository.findAllById(List.copyOf(ids));
+
+        List<Long> shardedIds = products.stream()
+                .filter(product -> product.getStockShards() > 0)
+                .map(Product::getId)
+                .toList();
+        Map<Long, Integer> shardedStock = new HashMap<>();
+        if (!shardedIds.isEmpty()) {
+            stockShardRepository.sumStockByProductIdIn(shardedIds)
+                    .forEach(row -> shardedStock.put(row.getProductId(), row.getStock().intValue()));
+        }
+
+        Map<Long, ProductSnapshotDTO> snapshots = new HashMap<>();
+        for (Product product : products) {
+            snapshots.put(product.getId(), new ProductSnapshotDTO(
+                    product.getId(),
+                    product.getName(),
+                    product.getDescription(),
+                    product.getPrice(),
+                    shardedStock.getOrDefault(product.getId(), product.getStock()),
+                    product.getStockShards(),
+                    product.getCreatedAt()
+            ));
+        }
+        log.debug("Loaded {} of {} requested products into the cache", snapshots.size(), ids.size());
+        return snapshots;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.ecommerce.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+// Every instance assigns itself the topic's single partition without a consumer group, so each one sees every
+// change and nothing is committed; it seeks to the end on each start, as only changes from now on concern it
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductEventConsumer implements ConsumerSeekAware {
+
+    public static final String LISTENER_ID = "product-cache";
+
+    private final ProductCatalogCache productCatalogCache;
+
+    @Override
+    public void onPartitionsAssigned(Map<org.apache.kafka.common.TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToEnd(assignments.keySet());
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID, idIsGroup = false, containerFactory = "groupLessContainerFactory",
+            topicPartitions = @TopicPartition(topic = ProductEventPublisher.TOPIC, partitions = "0")
+    )
+    public void handleProductChanged(@Payload Map<String, Object> message) {
+        Object productId = message.get("productId");
+        if (!(productId instanceof Number id)) {
+            log.warn("Ignoring product event without productId: {}", message);
+            return;
+        }
+        productCatalogCache.evictLocal(id.longValue());
+        log.debug("Evicted product {} from the cache after a change on another instance", id);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.ecommerce.service;
+
+/**
+ * Tells the other instances that a product changed, so they drop it from their {@link ProductCatalogCache}:
+ * through Kafka by default, or not at all on single-node deployments running the
+ * {@value InProcessOrderEventTransport#PROFILE} profile, where the write path's own eviction is enough.
+ */
+public interface ProductEventPublisher {
+
+    String TOPIC = "product-events";
+
+    // Called by the product write paths after they evicted the product locally
+    void publishProductChanged(Long productId);
+}
@@ -1,23 +1,32 @@
 package com.example.ecommerce.service;
 
+import com.example.ecommerce.dto.CursorPageDTO;
+import com.example.ecommerce.dto.product.ProductCacheStatsDTO;
 import com.example.ecommerce.dto.product.ProductRequestDTO;
 import com.example.ecommerce.dto.product.ProductResponseDTO;
+import com.example.ecommerce.dto.product.ProductSnapshotDTO;
 import com.example.ecommerce.dto.product.ProductUpdateDTO;
 import com.example.ecommerce.entity.Product;
 import com.example.ecommerce.exception.ResourceNotFoundException;
 import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.ProductStockShardRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductStockShardRepository stockShardRepository;
+    private final InventoryService inventoryService;
+    private final ProductCatalogCache productCatalogCache;
+    private final ProductEventPublisher productEventPublisher;
 
     @Transactional
     public ProductResponseDTO createProduct(ProductRequestDTO requestDTO) {
@@ -27,27 +36,54 @@ public class ProductService {
         product.setPrice(requestDTO.getPrice());
         product.setStock(requestDTO.getStock());
 
-        Product savedProduct = productRepository.save(product);
+        Product savedProduct = productRepository.saveAndFlush(product);
+        if (requestDTO.getStockShards() != null && requestDTO.getStockShards() > 0) {
+            inventoryService.setStock(savedProduct, requestDTO.getStock(), requestDTO.getStockShards());
+        }
         return mapToResponseDTO(savedProduct);
     }
 
-    @Transactional(readOnly = true)
     public ProductResponseDTO getProductById(Long id) {
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + id));
-        return mapToResponseDTO(product);
+        ProductSnapshotDTO product = productCatalogCache.get(id);
+        if (product == null) {
+            throw new ResourceNotFoundException("Product not found with id: " + id);
+        }
+
+        ProductResponseDTO dto = new ProductResponseDTO();
+        dto.setId(product.getId());
+        dto.setName(product.getName());
+        dto.setDescription(product.getDescription());
+        dto.setPrice(product.getPrice());
+        dto.setStock(product.getStock());
+        dto.setStockShards(product.getStockShards());
+        dto.setCreatedAt(product.getCreatedAt());
+        return dto;
     }
 
     @Transactional(readOnly = true)
-    public List<ProductResponseDTO> getAllProducts() {
-        return productRepository.findAll().stream()
-                .map(this::mapToResponseDTO)
-                .collect(Collectors.toList());
+    public CursorPageDTO<ProductResponseDTO> getAllProducts(String after, Integer limit) {
+        long afterId = CursorPagination.decodeAfter(after);
+        int pageSize = CursorPagination.normalizeLimit(limit);
+        List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(afterId, CursorPagination.probe(pageSize));
+
+        // Sharded products report the sum of their shards, fetched for the whole page at once
+        List<Long> shardedIds = products.stream()
+                .filter(product -> product.getStockShards() > 0)
+                .map(Product::getId)
+                .toList();
+        Map<Long, Integer> shardedStock = new HashMap<>();
+        if (!shardedIds.isEmpty()) {
+            stockShardRepository.sumStockByProductIdIn(shardedIds)
+                    .forEach(row -> shardedStock.put(row.getProductId(), row.getStock().intValue()));
+        }
+        return CursorPagination.toPage(products, pageSize, Product::getId, product ->
+                mapToResponseDTO(product, shardedStock.getOrDefault(product.getId(), product.getStock())));
     }
 
     @Transactional
     public ProductResponseDTO updateProduct(Long id, ProductUpdateDTO updateDTO) {
-        Product product = productRepository.findById(id)
+        // Locked so the stock cannot move under reservations while it is being replaced or re-sharded
+        Product product = productRepository.findForUpdateById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + id));
 
         if (updateDTO.getName() != null) {
@@ -62,29 +98,52 @@ public class ProductService {
             product.setPrice(updateDTO.getPrice());
         }
 
-        if (updateDTO.getStock() != null) {
-            product.setStock(updateDTO.getStock());
+        if (updateDTO.getStock() != null || updateDTO.getStockShards() != null) {
+            int stock = updateDTO.getStock() != null ? updateDTO.getStock() : inventoryService.lockedStockOf(product);
+            int shards = updateDTO.getStockShards() != null ? updateDTO.getStockShards() : product.getStockShards();
+            if (shards > 0 || product.getStockShards() > 0) {
+                inventoryService.setStock(product, stock, shards);
+            } else {
+                product.setStock(stock);
+            }
         }
 
         Product updatedProduct = productRepository.save(product);
+        productCatalogCache.evict(id);
+        productEventPublisher.publishProductChanged(id);
         return mapToResponseDTO(updatedProduct);
     }
 
+    public ProductCacheStatsDTO getCacheStats() {
+        return productCatalogCache.stats();
+    }
+
     @Transactional
     public void deleteProduct(Long id) {
         if (!productRepository.existsById(id)) {
             throw new ResourceNotFoundException("Product not found with id: " + id);
         }
+        stockShardRepository.deleteByProductId(id);
         productRepository.deleteById(id);
+        productCatalogCache.evict(id);
+        productEventPublisher.publishProductChanged(id);
     }
 
     private ProductResponseDTO mapToResponseDTO(Product product) {
+        int stock = product.getStockShards() > 0
+                ? (int) stockShardRepository.sumStock(product.getId())
+                : product.getStock();
+        return mapToResponseDTO(product, stock);
+    }
+
+    private ProductResponseDTO mapToResponseDTO(Product product, int stock) {
         ProductResponseDTO dto = new ProductResponseDTO();
         dto.setId(product.getId());
         dto.setName(product.getName());
         dto.setDescription(product.getDescription());
         dto.setPrice(product.getPrice());
-        dto.setStock(product.getStock());
+        dto.setStock(stock);
+        dto.setStockShards(product.getStockShards());
         dto.setCreatedAt(product.getCreatedAt());
         return dto;
     }
@@ -1,5 +1,6 @@
 package com.example.ecommerce.service;
 
+import com.example.ecommerce.dto.CursorPageDTO;
 import com.example.ecommerce.dto.user.UserRequestDTO;
 import com.example.ecommerce.dto.user.UserResponseDTO;
 import com.example.ecommerce.dto.user.UserUpdateDTO;
@@ -13,7 +14,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -33,7 +33,7 @@ public class UserService {
         user.setEmail(requestDTO.getEmail());
         user.setPassword(passwordEncoder.encode(requestDTO.getPassword()));
 
-        User savedUser = userRepository.save(user);
+        User savedUser = userRepository.saveAndFlush(user);
         return mapToResponseDTO(savedUser);
     }
 
@@ -45,10 +45,11 @@ public class UserService {
     }
 
     @Transactional(readOnly = true)
-    public List<UserResponseDTO> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::mapToResponseDTO)
-                .collect(Collectors.toList());
+    public CursorPageDTO<UserResponseDTO> getAllUsers(String after, Integer limit) {
+        long afterId = CursorPagination.decodeAfter(after);
+        int pageSize = CursorPagination.normalizeLimit(limit);
+        List<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(afterId, CursorPagination.probe(pageSize));
+        return CursorPagination.toPage(users, pageSize, User::getId, this::mapToResponseDTO);
     }
 
     @Transactional
@@ -0,0 +1,137 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.backpressure.ConsumerBackpressureStatsDTO;
+import com.example.ecommerce.service.ConsumerBackpressure;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Exhausts a small H2 pool while the application runs on an embedded broker: once threads queue
+ * for connections the order and notification containers are paused, and after the connections are
+ * handed back and the pool stays calm they are resumed. The paused gauges and the pause counter follow.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:consumer-backpressure;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.hikari.maximum-pool-size=3",
+        "spring.datasource.hikari.connection-timeout=10000",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "consumer-backpressure.interval-ms=100",
+        "kafka.order-events.partitions=1",
+        "kafka.order-events.listener-concurrency=1"
+})
+@EmbeddedKafka(partitions = 1, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class ConsumerBackpressureIntegrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ConsumerBackpressure consumerBackpressure;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("Consumers are paused while the database pool is exhausted and resumed once it recovers")
+    void testConsumersPausedWhilePoolExhausted() throws Exception {
+        List<MessageListenerContainer> containers = ConsumerBackpressure.LISTENER_IDS.stream()
+                .map(listenerRegistry::getListenerContainer)
+                .toList();
+        containers.forEach(container -> assertNotNull(container, "Listener container missing"));
+        await(() -> containers.stream().allMatch(MessageListenerContainer::isRunning), "Containers did not start");
+        assertFalse(consumerBackpressure.isPaused());
+        assertEquals(0, paused(), "No listener should be reported paused yet");
+
+        List<Connection> held = new ArrayList<>();
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                held.add(dataSource.getConnection());
+            }
+            // Threads queued for a connection, as request threads would be while the consumers hold the pool
+            for (int i = 0; i < 3; i++) {
+                waiting.add(CompletableFuture.runAsync(() -> {
+                    try (Connection connection = dataSource.getConnection()) {
+                        connection.isValid(1);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+
+            await(consumerBackpressure::isPaused, "Consumers were not paused while the pool was exhausted");
+            await(() -> containers.stream().allMatch(MessageListenerContainer::isPauseRequested), "Containers were not asked to pause");
+            await(() -> containers.stream().allMatch(MessageListenerContainer::isContainerPaused), "Containers did not pause");
+            assertEquals(ConsumerBackpressure.LISTENER_IDS.size(), paused(), "Every paused listener should be reported");
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+        CompletableFuture.allOf(waiting.toArray(CompletableFuture[]::new)).join();
+
+        await(() -> !consumerBackpressure.isPaused(), "Consumers were not resumed after the pool recovered");
+        await(() -> containers.stream().noneMatch(MessageListenerContainer::isContainerPaused), "Containers did not resume");
+
+        ConsumerBackpressureStatsDTO stats = consumerBackpressure.stats();
+        assertTrue(stats.isEnabled());
+        assertFalse(stats.isPaused());
+        assertEquals(1, stats.getPauseCount());
+        assertTrue(stats.getPausedMillis() > 0);
+        assertEquals(3, stats.getMaximumPoolSize());
+        assertTrue(stats.isAcquisitionsTracked());
+        assertEquals(0, paused());
+        assertEquals(1, meterRegistry.get(ConsumerBackpressure.PAUSES_METER).counter().count());
+    }
+
+    // Listeners the paused gauges report as paused
+    private double paused() {
+        return meterRegistry.get(ConsumerBackpressure.PAUSED_METER).gauges().stream()
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+
+    // Actuator is not on the classpath, so no registry is auto-configured
+    @TestConfiguration
+    static class Meters {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.User;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.NotificationService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends poison records through the real listeners on H2 and an embedded broker. An order-created event
+ * whose processing keeps failing goes through the containers' error handler: it is tried twice more,
+ * a second apart, then dead-lettered with the exception and the offset it failed at. A notification the
+ * database rejects is dead-lettered by the notification listener itself, right away and on its own,
+ * while the rest of its poll is stored.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:dead-letter-poison;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "kafka.order-events.partitions=1",
+        "kafka.order-events.listener-concurrency=1"
+})
+@EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class DeadLetterPoisonRecordTest {
+
+    private static final long STORED_ORDER = 5001;
+    private static final long UNSTORABLE_ORDER = 5666;
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("An order event that keeps failing is retried twice by the error handler, then dead-lettered with its exception and offset")
+    void testFailingOrderEventIsRetriedThenDeadLettered() throws Exception {
+        User user = userRepository.findAll().get(0);
+        Order order = new Order();
+        order.setUser(user);
+        order.setTotal(new BigDecimal("6.00"));
+        order.setStatus(OrderStatus.PENDING);
+        Long orderId = orderRepository.save(order).getId();
+        // The order cannot move to PROCESSING, so every attempt at the event fails
+        jdbcTemplate.execute("alter table orders add constraint ck_test_poison check (id <> " + orderId + " or status <> 'PROCESSING')");
+        try {
+            long sentAt = System.currentTimeMillis();
+            long offset = send(record(OrderEventType.ORDER_CREATED, orderId,
+                    new OrderCreatedEvent(orderId, user.getId(), new BigDecimal("6.00"), LocalDateTime.now())));
+
+            ConsumerRecord<String, byte[]> deadLetter = awaitDeadLetter(orderId);
+            assertTrue(System.currentTimeMillis() - sentAt >= 2_000, "The event should be retried twice, a second apart, before it is dead-lettered");
+            assertEquals(OrderEventPublisher.TOPIC, header(deadLetter, KafkaHeaders.DLT_ORIGINAL_TOPIC));
+            assertEquals(offset, ByteBuffer.wrap(deadLetter.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+            assertEquals("order-processor-group", header(deadLetter, KafkaHeaders.DLT_ORIGINAL_CONSUMER_GROUP));
+            assertNotNull(header(deadLetter, KafkaHeaders.DLT_EXCEPTION_FQCN));
+            assertNotNull(header(deadLetter, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+            assertEquals(OrderEventType.ORDER_CREATED.getHeaderValue(), header(deadLetter, OrderEventType.HEADER));
+            assertEquals(OrderStatus.PENDING, orderRepository.findById(orderId).orElseThrow().getStatus());
+        } finally {
+            jdbcTemplate.execute("alter table orders drop constraint ck_test_poison");
+        }
+    }
+
+    @Test
+    @DisplayName("A notification the database rejects is dead-lettered by the listener on its own, the rest of the poll is stored")
+    void testRejectedNotificationIsDeadLetteredPerRecord() throws Exception {
+        jdbcTemplate.execute("alter table notifications add constraint ck_test_poison check (order_id <> " + UNSTORABLE_ORDER + ")");
+        try {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(NotificationService.LISTENER_ID);
+            container.stop();
+            send(record(OrderEventType.ORDER_COMPLETED, STORED_ORDER, new OrderCompletedEvent(STORED_ORDER, LocalDateTime.now())));
+            long offset = send(record(OrderEventType.ORDER_COMPLETED, UNSTORABLE_ORDER, new OrderCompletedEvent(UNSTORABLE_ORDER, LocalDateTime.now())));
+            container.start();
+
+            ConsumerRecord<String, byte[]> deadLetter = awaitDeadLetter(UNSTORABLE_ORDER);
+            assertEquals(offset, ByteBuffer.wrap(deadLetter.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+            assertNotNull(header(deadLetter, KafkaHeaders.DLT_EXCEPTION_FQCN));
+            assertEquals(1, notificationRepository.findByOrderId(STORED_ORDER).size(), "The rest of the poll should be stored");
+            assertTrue(notificationRepository.findByOrderId(UNSTORABLE_ORDER).isEmpty());
+        } finally {
+            jdbcTemplate.execute("alter table notifications drop constraint ck_test_poison");
+        }
+    }
+
+    private ProducerRecord<String, byte[]> record(OrderEventType type, long orderId, Object event) throws Exception {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(OrderEventPublisher.TOPIC, String.valueOf(orderId),
+                objectMapper.writeValueAsBytes(event));
+        record.headers().add(OrderEventType.HEADER, type.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    // Returns the offset the record was written at
+    private long send(ProducerRecord<String, byte[]> record) throws Exception {
+        DefaultKafkaProducerFactory<String, byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new ByteArraySerializer());
+        try {
+            return new KafkaTemplate<>(producerFactory).send(record).get().getRecordMetadata().offset();
+        } finally {
+            producerFactory.destroy();
+        }
+    }
+
+    // Fails if an order's event was dead-lettered more than once
+    private ConsumerRecord<String, byte[]> awaitDeadLetter(long orderId) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("poison-dead-letters-" + orderId, "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        List<ConsumerRecord<String, byte[]>> deadLetters = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(DeadLetterService.TOPIC));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (deadLetters.isEmpty() && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(record -> {
+                    if (String.valueOf(orderId).equals(record.key())) {
+                        deadLetters.add(record);
+                    }
+                });
+            }
+            consumer.poll(Duration.ofSeconds(1)).forEach(record -> {
+                if (String.valueOf(orderId).equals(record.key())) {
+                    deadLetters.add(record);
+                }
+            });
+        }
+        assertEquals(1, deadLetters.size(), "Order " + orderId + " should be dead-lettered once");
+        return deadLetters.get(0);
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String key) {
+        return record.headers().lastHeader(key) == null ? null : new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
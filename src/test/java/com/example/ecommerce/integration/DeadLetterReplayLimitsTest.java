@@ -0,0 +1,91 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayRequestDTO;
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayResultDTO;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.ReplayInProgressException;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A replay runs on the requesting thread: one that could not finish within the maximum replay
+ * duration at its rate is refused up front, and a second replay is refused while one is running.
+ */
+@EmbeddedKafka(partitions = 1, topics = {OrderEventPublisher.TOPIC, DeadLetterService.TOPIC})
+class DeadLetterReplayLimitsTest {
+
+    private DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private DeadLetterService deadLetterService;
+
+    @BeforeEach
+    void setUp(EmbeddedKafkaBroker broker) {
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+        producerProps.put("key.serializer", StringSerializer.class);
+        producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("unused", "false", broker);
+        deadLetterService = new DeadLetterService(producerFactory, new DefaultKafkaConsumerFactory<>(consumerProps), true, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        deadLetterService.shutdown();
+        producerFactory.destroy();
+    }
+
+    @Test
+    @DisplayName("A replay too long for its rate is refused, and so is a second replay while one is running")
+    void testReplayIsBoundedAndSingleFlight() throws Exception {
+        // 100 records at 5/s take 19.8s, more than the 10s allowed
+        assertThrows(InvalidRequestException.class, () -> deadLetterService.replay(request(100, 5)));
+
+        for (long orderId = 1; orderId <= 3; orderId++) {
+            ConsumerRecord<String, Object> record = new ConsumerRecord<>(OrderEventPublisher.TOPIC, 0, orderId, System.currentTimeMillis(),
+                    TimestampType.CREATE_TIME, 0, 0, String.valueOf(orderId), new OrderCompletedEvent(orderId, LocalDateTime.now()),
+                    new RecordHeaders().add(OrderEventType.HEADER, OrderEventType.ORDER_COMPLETED.getHeaderValue().getBytes(StandardCharsets.UTF_8)),
+                    Optional.empty());
+            deadLetterService.deadLetter(record, null, new IllegalStateException("Database unavailable"));
+        }
+
+        // Three records at 1/s keep the first replay running for two seconds
+        CompletableFuture<DeadLetterReplayResultDTO> running = CompletableFuture.supplyAsync(() -> deadLetterService.replay(request(3, 1)));
+        Thread.sleep(500);
+        assertFalse(running.isDone(), "The first replay should still be running");
+        assertThrows(ReplayInProgressException.class, () -> deadLetterService.replay(request(3, 1000)));
+
+        assertEquals(3, running.get(30, TimeUnit.SECONDS).getReplayed());
+        // Once it finished, the next replay may run
+        assertEquals(3, deadLetterService.replay(request(3, 1000)).getReplayed());
+    }
+
+    private static DeadLetterReplayRequestDTO request(int limit, int ratePerSecond) {
+        DeadLetterReplayRequestDTO request = new DeadLetterReplayRequestDTO();
+        request.setLimit(limit);
+        request.setRatePerSecond(ratePerSecond);
+        return request;
+    }
+}
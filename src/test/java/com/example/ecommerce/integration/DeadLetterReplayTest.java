@@ -0,0 +1,162 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayRequestDTO;
+import com.example.ecommerce.dto.deadletter.DeadLetterReplayResultDTO;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventCodec;
+import com.example.ecommerce.event.OrderEventDeserializer;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dead-letters order events the way the listeners do and replays them: dead letters keep their
+ * payload and headers and record where and why they failed, and a replay sends only the matching
+ * ones back to their original topic, no faster than the requested rate.
+ */
+@EmbeddedKafka(partitions = 2, topics = {OrderEventPublisher.TOPIC, DeadLetterService.TOPIC})
+class DeadLetterReplayTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 3, 14, 15, 9, 26);
+
+    private EmbeddedKafkaBroker broker;
+    private DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private DeadLetterService deadLetterService;
+
+    @BeforeEach
+    void setUp(EmbeddedKafkaBroker broker) {
+        this.broker = broker;
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+        producerProps.put("key.serializer", StringSerializer.class);
+        producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("unused", "false", broker);
+        deadLetterService = new DeadLetterService(producerFactory, new DefaultKafkaConsumerFactory<>(consumerProps), true, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        deadLetterService.shutdown();
+        producerFactory.destroy();
+    }
+
+    @Test
+    @DisplayName("Failed records are dead-lettered with their payload, origin and exception, and matching ones are replayed at the given rate")
+    void testDeadLetterAndReplay() throws Exception {
+        List<OrderCreatedEvent> created = new ArrayList<>();
+        long offset = 100;
+        for (long orderId = 1; orderId <= 10; orderId++) {
+            OrderCreatedEvent event = new OrderCreatedEvent(orderId, 7L, new BigDecimal("12.50"), TIMESTAMP);
+            created.add(event);
+            // Half failed while processing, so the record still holds the event; the other half in the binary format
+            ConsumerRecord<String, Object> record = orderId % 2 == 0
+                    ? record(offset++, orderId, headers(OrderEventType.ORDER_CREATED, false), event)
+                    : record(offset++, orderId, headers(OrderEventType.ORDER_CREATED, true), OrderEventCodec.encode(OrderEventType.ORDER_CREATED, event));
+            deadLetterService.deadLetter(record, null, new IllegalStateException("Database unavailable"));
+        }
+        // A record that could not be deserialized carries its raw bytes in the exception header
+        Headers unreadable = headers(OrderEventType.ORDER_COMPLETED, false);
+        byte[] garbage = "{not json".getBytes(StandardCharsets.UTF_8);
+        SerializationUtils.deserializationException(unreadable, garbage, new DeserializationException("Unreadable", garbage, false, null), false);
+        ConsumerRecord<String, Object> unreadableRecord = record(offset, 99L, unreadable, null);
+        deadLetterService.deadLetter(unreadableRecord, null, DeadLetterService.deserializationFailureOf(unreadableRecord));
+
+        List<ConsumerRecord<String, byte[]>> deadLetters = readAll(DeadLetterService.TOPIC, 11);
+        ConsumerRecord<String, byte[]> garbageLetter = deadLetters.stream().filter(r -> "99".equals(r.key())).findFirst().orElseThrow();
+        assertArrayEquals(garbage, garbageLetter.value());
+        assertEquals(offset, ByteBuffer.wrap(header(garbageLetter.headers(), KafkaHeaders.DLT_ORIGINAL_OFFSET).orElseThrow()).getLong());
+        assertEquals(OrderEventPublisher.TOPIC, header(garbageLetter.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC).map(String::new).orElseThrow());
+        assertEquals(DeserializationException.class.getName(), header(garbageLetter.headers(), KafkaHeaders.DLT_EXCEPTION_FQCN).map(String::new).orElseThrow());
+
+        int ratePerSecond = 20;
+        DeadLetterReplayRequestDTO request = new DeadLetterReplayRequestDTO();
+        request.setEventType(OrderEventType.ORDER_CREATED);
+        // Above the number of matches, so the whole topic is scanned, and short enough at this rate
+        request.setLimit(100);
+        request.setRatePerSecond(ratePerSecond);
+        DeadLetterReplayResultDTO result = deadLetterService.replay(request);
+
+        assertEquals(11, result.getScanned());
+        assertEquals(10, result.getReplayed());
+        assertEquals(0, result.getFailed());
+        // The first record goes out at once, every further one a rate interval later
+        assertTrue(result.getElapsedMs() >= 9 * 1000 / ratePerSecond, "Replay was faster than " + ratePerSecond + "/s: " + result.getElapsedMs() + " ms");
+
+        OrderEventDeserializer deserializer = new OrderEventDeserializer();
+        deserializer.configure(Map.of(), false);
+        List<Object> replayed = new ArrayList<>();
+        for (ConsumerRecord<String, byte[]> record : readAll(OrderEventPublisher.TOPIC, 10)) {
+            assertTrue(header(record.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC).isEmpty(), "Dead-letter headers should be dropped");
+            replayed.add(deserializer.deserialize(record.topic(), record.headers(), record.value()));
+        }
+        assertEquals(created.size(), replayed.size());
+        assertTrue(replayed.containsAll(created), "Replayed events should equal the original ones");
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, Long orderId, Headers headers, Object value) {
+        return new ConsumerRecord<>(OrderEventPublisher.TOPIC, (int) (orderId % 2), offset, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                0, 0, String.valueOf(orderId), value, headers, Optional.empty());
+    }
+
+    private static Headers headers(OrderEventType type, boolean binary) {
+        Headers headers = new RecordHeaders();
+        headers.add(OrderEventType.HEADER, type.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        if (binary) {
+            headers.add(OrderEventCodec.FORMAT_HEADER, OrderEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8));
+        }
+        return headers;
+    }
+
+    private List<ConsumerRecord<String, byte[]>> readAll(String topic, int expected) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("read-" + topic, "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(topic));
+            List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (records.size() < expected && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(records::add);
+            }
+            assertEquals(expected, records.size(), "Unexpected number of records on " + topic);
+            return records;
+        }
+    }
+
+    private static Optional<byte[]> header(Headers headers, String key) {
+        return Optional.ofNullable(headers.lastHeader(key)).map(Header::value);
+    }
+}
@@ -25,6 +25,7 @@ import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -183,6 +184,17 @@ class EcommerceIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(greaterThan(0))));
 
+        // READ Products with a page size and a malformed cursor
+        mockMvc.perform(get("/api/products?limit=1")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mockMvc.perform(get("/api/products?after=not-a-cursor")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Invalid cursor")));
+
         // UPDATE Product
         ProductUpdateDTO updateRequest = new ProductUpdateDTO();
         updateRequest.setName("Updated Product Name");
@@ -268,6 +280,42 @@ class EcommerceIntegrationTest {
                 .andExpect(jsonPath("$", hasSize(greaterThan(0))))
                 .andExpect(jsonPath("$[0].userId").value(userId));
 
+        // EXPORT Orders as NDJSON
+        MvcResult exportResult = mockMvc.perform(get("/api/orders/export")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(exportResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(containsString("\"id\":" + orderId + ",")));
+
+        // CREATE Orders in bulk - one valid, one referencing an unknown user
+        OrderRequestDTO unknownUserOrder = new OrderRequestDTO();
+        unknownUserOrder.setUserId(99999L);
+        unknownUserOrder.setStatus(OrderStatus.PENDING);
+        unknownUserOrder.setTotal(new BigDecimal("299.98"));
+        unknownUserOrder.setItems(Collections.singletonList(orderItem));
+
+        MvcResult batchResult = mockMvc.perform(post("/api/orders/batch")
+                        .header("Authorization", "Bearer " + jwtToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(orderRequest, unknownUserOrder))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.results[0].created").value(true))
+                .andExpect(jsonPath("$.results[1].created").value(false))
+                .andExpect(jsonPath("$.results[1].error", containsString("User not found")))
+                .andReturn();
+
+        Long batchOrderId = objectMapper.readTree(batchResult.getResponse().getContentAsString())
+                .path("results").path(0).path("orderId").asLong();
+        mockMvc.perform(delete("/api/orders/" + batchOrderId)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isNoContent());
+
         // Test validation error - invalid product
         OrderItemDTO invalidItem = new OrderItemDTO();
         invalidItem.setProductId(99999L);
@@ -286,6 +334,25 @@ class EcommerceIntegrationTest {
                         .content(objectMapper.writeValueAsString(invalidOrder)))
                 .andExpect(status().isNotFound())
                 .andExpect(jsonPath("$.message", containsString("Product not found")));
+
+        // Test validation error - price that does not match the catalog
+        OrderItemDTO underpricedItem = new OrderItemDTO();
+        underpricedItem.setProductId(productId);
+        underpricedItem.setQuantity(1);
+        underpricedItem.setPrice(new BigDecimal("1.00"));
+
+        OrderRequestDTO underpricedOrder = new OrderRequestDTO();
+        underpricedOrder.setUserId(userId);
+        underpricedOrder.setStatus(OrderStatus.PENDING);
+        underpricedOrder.setTotal(new BigDecimal("1.00"));
+        underpricedOrder.setItems(Collections.singletonList(underpricedItem));
+
+        mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + jwtToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(underpricedOrder)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Price for product with id: " + productId)));
     }
 
     @Test
@@ -0,0 +1,137 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderRequestDTO;
+import com.example.ecommerce.dto.product.ProductRequestDTO;
+import com.example.ecommerce.dto.product.ProductUpdateDTO;
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.InProcessOrderEventTransport;
+import com.example.ecommerce.service.OrderEventTransport;
+import com.example.ecommerce.service.OrderService;
+import com.example.ecommerce.service.OrderStatusStore;
+import com.example.ecommerce.service.ProductCatalogCache;
+import com.example.ecommerce.service.ProductService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the order flow on H2 with the in-process profile and no broker at all: the Kafka containers
+ * stay stopped, and the same listeners process payments, store notifications and keep the status store
+ * from the ring buffer. Product changes only evict the local cache, so they do not wait on a broker either.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:in-process-events;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        // Nothing listens here, so any attempt to reach a broker would fail the flow
+        "spring.kafka.bootstrap-servers=localhost:1",
+        "payment.processing-delay-ms=100",
+        "payment.success-rate=1"
+})
+@ActiveProfiles(InProcessOrderEventTransport.PROFILE)
+class InProcessOrderEventIntegrationTest {
+
+    private static final int ORDERS = 20;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private OrderEventTransport transport;
+
+    @Autowired
+    private OrderStatusStore orderStatusStore;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Test
+    @DisplayName("Orders are paid and notified through the in-process ring buffer without a broker")
+    void testOrderFlowWithoutBroker() throws Exception {
+        assertInstanceOf(InProcessOrderEventTransport.class, transport);
+        assertTrue(listenerRegistry.getListenerContainers().stream().noneMatch(container -> container.isRunning()),
+                "Kafka listener containers should not be started");
+
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("In-process Product", "No broker", new BigDecimal("5.00"), 100, 0)).getId();
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            OrderItemDTO item = new OrderItemDTO(null, productId, null, 1, new BigDecimal("5.00"));
+            orderIds.add(orderService.createOrder(
+                    new OrderRequestDTO(userId, new BigDecimal("5.00"), OrderStatus.PENDING, List.of(item))).getId());
+        }
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        for (Long orderId : orderIds) {
+            Order order = orderRepository.findById(orderId).orElseThrow();
+            while (order.getStatus() != OrderStatus.COMPLETED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+                order = orderRepository.findById(orderId).orElseThrow();
+            }
+            assertEquals(OrderStatus.COMPLETED, order.getStatus(), "Order " + orderId + " should be completed");
+
+            while (notificationRepository.findByOrderId(orderId).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertTrue(notificationRepository.findByOrderId(orderId).stream().anyMatch(n -> "ORDER_COMPLETED".equals(n.getType())),
+                    "ORDER_COMPLETED notification should be created for order " + orderId);
+
+            while (orderStatusStore.find(orderId).map(status -> status.getStatus() != OrderStatus.COMPLETED).orElse(true)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(OrderStatus.COMPLETED, orderStatusStore.find(orderId).orElseThrow().getStatus(),
+                    "The status store should have order " + orderId + " as completed");
+        }
+    }
+
+    @Test
+    @DisplayName("Product updates and deletes return promptly without a broker and evict the local cache")
+    void testProductChangesWithoutBroker() {
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("In-process Cached Product", "No broker", new BigDecimal("5.00"), 10, 0)).getId();
+        assertEquals(new BigDecimal("5.00"), productCatalogCache.get(productId).getPrice());
+
+        // Publishing through Kafka would block each change for up to max.block.ms (60s) on the missing broker
+        long startedAt = System.currentTimeMillis();
+        productService.updateProduct(productId, new ProductUpdateDTO(null, null, new BigDecimal("6.00"), null, null));
+        assertEquals(new BigDecimal("6.00"), productCatalogCache.get(productId).getPrice());
+        productService.deleteProduct(productId);
+        assertNull(productCatalogCache.get(productId));
+        long elapsedMs = System.currentTimeMillis() - startedAt;
+        assertTrue(elapsedMs < 5_000, "Product changes took " + elapsedMs + " ms");
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Product;
+import com.example.ecommerce.exception.InsufficientStockException;
+import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.ProductStockShardRepository;
+import com.example.ecommerce.service.InventoryService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Slf4j
+class InventoryReservationConcurrencyTest {
+
+    private static final int THREADS = 64;
+    private static final int ATTEMPTS_PER_THREAD = 10;
+    private static final int INITIAL_STOCK = 200;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductStockShardRepository stockShardRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    @DisplayName("Concurrent reservations on one product never oversell")
+    void testConcurrentReservationsDoNotOversell() throws Exception {
+        Long productId = createProduct("Contended Product", 0);
+
+        assertReservationsExhaustStock(productId);
+        assertEquals(0, productRepository.findById(productId).orElseThrow().getStock());
+    }
+
+    @Test
+    @DisplayName("Concurrent reservations on a sharded product never oversell")
+    void testConcurrentShardedReservationsDoNotOversell() throws Exception {
+        Long productId = createProduct("Sharded Product", 8);
+
+        assertReservationsExhaustStock(productId);
+        assertEquals(0, stockShardRepository.sumStock(productId));
+    }
+
+    private Long createProduct(String name, int stockShards) {
+        return transactionTemplate.execute(status -> {
+            Product product = new Product();
+            product.setName(name);
+            product.setPrice(new BigDecimal("1.00"));
+            product.setStock(INITIAL_STOCK);
+            Product saved = productRepository.save(product);
+            if (stockShards > 0) {
+                inventoryService.setStock(saved, INITIAL_STOCK, stockShards);
+            }
+            return saved.getId();
+        });
+    }
+
+    private void assertReservationsExhaustStock(Long productId) throws Exception {
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status ->
+                                inventoryService.reserve(Map.of(productId, 1)));
+                        reserved.incrementAndGet();
+                    } catch (InsufficientStockException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        executor.shutdown();
+
+        int attempts = THREADS * ATTEMPTS_PER_THREAD;
+        log.info("{} reservation attempts on one product in {} ms ({}/s)",
+                attempts, elapsedMillis, Math.round(attempts * 1000.0 / Math.max(elapsedMillis, 1)));
+
+        assertEquals(INITIAL_STOCK, reserved.get(), "Exactly the available stock should be reserved");
+        assertEquals(attempts - INITIAL_STOCK, rejected.get(), "Every other attempt should be rejected");
+    }
+}
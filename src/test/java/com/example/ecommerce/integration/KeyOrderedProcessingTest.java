@@ -0,0 +1,360 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.User;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OrderEventConsumer;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the real order-created listener in key-ordered mode on H2 and one partition of an embedded
+ * broker, with every order update slowed down so the workers overlap and commits happen while they
+ * are busy. The events of one key are handled in the order they were sent, the committed offset
+ * never passes an event whose order has not been picked up yet, and the workers never hold more
+ * events than the in-flight bound plus the poll taken before they were full. A key whose events are
+ * slow does not hold back the other lanes: the listener keeps polling for them, while the committed
+ * offset waits for the slow key. A poison event only fails itself, not the other events of its key.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:key-ordered-processing;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "kafka.order-events.partitions=1",
+        "kafka.order-events.listener-concurrency=1",
+        "kafka.order-events.key-ordered.workers=" + KeyOrderedProcessingTest.WORKERS,
+        "kafka.order-events.key-ordered.max-in-flight=" + KeyOrderedProcessingTest.MAX_IN_FLIGHT,
+        "spring.kafka.consumer.max-poll-records=" + KeyOrderedProcessingTest.MAX_POLL_RECORDS,
+        // Payments stay in flight for the whole test, so the orders stay PROCESSING
+        "payment.processing-delay-ms=600000"
+})
+@EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class KeyOrderedProcessingTest {
+
+    static final int WORKERS = 4;
+    static final int MAX_POLL_RECORDS = 10;
+    static final int MAX_IN_FLIGHT = 6;
+    private static final int KEYS = 8;
+    private static final int EVENTS_PER_KEY = 10;
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderEventConsumer orderEventConsumer;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Test
+    @DisplayName("Events of a key are handled in order and no offset is committed past an unhandled event")
+    void testKeyOrderAndCommitsWithWorkers() throws Exception {
+        User user = userRepository.findAll().get(0);
+        // Each key gets its own orders, sent in order of creation and interleaved with the other keys' events
+        Map<String, List<Long>> ordersByKey = new LinkedHashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            ordersByKey.put("key-" + key, createOrders(user, EVENTS_PER_KEY));
+        }
+
+        jdbcTemplate.execute("create trigger slow_order_update before update on orders for each row call \""
+                + SlowUpdate.class.getName() + "\"");
+        try {
+            Map<Long, Long> orderByOffset = send(ordersByKey, user.getId());
+            long lastOffset = orderByOffset.keySet().stream().max(Long::compare).orElseThrow();
+
+            long deadline = System.currentTimeMillis() + 60_000;
+            long committed = 0;
+            int maxInFlight = 0;
+            while (committed <= lastOffset && System.currentTimeMillis() < deadline) {
+                maxInFlight = Math.max(maxInFlight, orderEventConsumer.getInFlight());
+                committed = committedOffset();
+                // Read after the commit, so every event before the committed offset must have been handled by now
+                for (Map.Entry<Long, Long> sent : orderByOffset.entrySet()) {
+                    if (sent.getKey() < committed) {
+                        assertNotEquals(OrderStatus.PENDING, orderRepository.findById(sent.getValue()).orElseThrow().getStatus(),
+                                "Offset " + committed + " was committed before the event at " + sent.getKey() + " was handled");
+                    }
+                }
+                Thread.sleep(20);
+            }
+            assertEquals(lastOffset + 1, committed, "Every event should be committed once handled");
+            // The partition is paused once the workers are full, so they take at most one more poll than the bound
+            assertTrue(maxInFlight < MAX_IN_FLIGHT + MAX_POLL_RECORDS, maxInFlight + " events were on the workers at once");
+            // Only a count of events, not of the lane batches they were handed over in, gets past one per lane
+            assertTrue(maxInFlight > WORKERS, "In flight should count events, but never went above " + maxInFlight);
+            assertEquals(0, orderEventConsumer.getInFlight());
+        } finally {
+            jdbcTemplate.execute("drop trigger slow_order_update");
+        }
+
+        for (Map.Entry<String, List<Long>> key : ordersByKey.entrySet()) {
+            LocalDateTime previous = null;
+            for (Long orderId : key.getValue()) {
+                Order order = orderRepository.findById(orderId).orElseThrow();
+                assertEquals(OrderStatus.PROCESSING, order.getStatus());
+                if (previous != null) {
+                    assertFalse(order.getUpdatedAt().isBefore(previous),
+                            "Order " + orderId + " of " + key.getKey() + " was picked up before the events sent ahead of it");
+                }
+                previous = order.getUpdatedAt();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A slow key does not hold back the other lanes, only the committed offset")
+    void testSlowKeyDoesNotBlockOtherLanes() throws Exception {
+        User user = userRepository.findAll().get(0);
+        String hotKey = "hot";
+        Map<String, List<Long>> ordersByKey = new LinkedHashMap<>();
+        ordersByKey.put(hotKey, createOrders(user, 1));
+        // Keys on the other lanes, which share none of the hot key's thread
+        for (int key = 0; ordersByKey.size() <= KEYS; key++) {
+            if (Math.floorMod(("key-" + key).hashCode(), WORKERS) != Math.floorMod(hotKey.hashCode(), WORKERS)) {
+                ordersByKey.put("key-" + key, createOrders(user, EVENTS_PER_KEY));
+            }
+        }
+        Long hotOrderId = ordersByKey.get(hotKey).get(0);
+        List<Long> otherOrderIds = ordersByKey.entrySet().stream()
+                .filter(key -> !key.getKey().equals(hotKey))
+                .flatMap(key -> key.getValue().stream())
+                .toList();
+
+        HotOrderUpdate.hotOrderId = hotOrderId;
+        jdbcTemplate.execute("create trigger hot_order_update before update on orders for each row call \""
+                + HotOrderUpdate.class.getName() + "\"");
+        try {
+            Map<Long, Long> orderByOffset = send(ordersByKey, user.getId());
+            long hotOffset = orderByOffset.entrySet().stream()
+                    .filter(sent -> sent.getValue().equals(hotOrderId))
+                    .findFirst().orElseThrow().getKey();
+            long lastOffset = orderByOffset.keySet().stream().max(Long::compare).orElseThrow();
+
+            // Every poll after the first had to be taken while the hot key's lane was still busy
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (countPending(otherOrderIds) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, countPending(otherOrderIds), "The other keys' events should all be handled");
+            assertEquals(OrderStatus.PENDING, orderRepository.findById(hotOrderId).orElseThrow().getStatus(),
+                    "The hot key's event should still be running");
+            assertTrue(committedOffset() <= hotOffset, "The committed offset should wait for the hot key's event");
+
+            deadline = System.currentTimeMillis() + 30_000;
+            while (committedOffset() <= lastOffset && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(lastOffset + 1, committedOffset(), "Every event should be committed once the hot key is done");
+            assertEquals(OrderStatus.PROCESSING, orderRepository.findById(hotOrderId).orElseThrow().getStatus());
+        } finally {
+            jdbcTemplate.execute("drop trigger hot_order_update");
+            HotOrderUpdate.hotOrderId = null;
+        }
+    }
+
+    @Test
+    @DisplayName("A poison event fails on its own: the rest of its key's batch is handled and only it is dead-lettered")
+    void testPoisonEventAmongGoodEventsOfItsKey() throws Exception {
+        User user = userRepository.findAll().get(0);
+        String key = "poisoned";
+        List<Long> orderIds = createOrders(user, 5);
+        Long poisonId = orderIds.get(2);
+        // The order cannot move to PROCESSING, so its event fails its lane's batch and then fails on its own
+        jdbcTemplate.execute("alter table orders add constraint ck_test_poison check (id <> " + poisonId + " or status <> 'PROCESSING')");
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(OrderEventConsumer.LISTENER_ID);
+        try {
+            // Sent while the listener is stopped, so the events arrive in one poll and as one lane batch
+            container.stop();
+            Map<Long, Long> orderByOffset = send(Map.of(key, orderIds), user.getId());
+            container.start();
+            long poisonOffset = orderByOffset.entrySet().stream()
+                    .filter(sent -> sent.getValue().equals(poisonId))
+                    .findFirst().orElseThrow().getKey();
+            long lastOffset = orderByOffset.keySet().stream().max(Long::compare).orElseThrow();
+
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (committedOffset() <= lastOffset && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(lastOffset + 1, committedOffset(), "The batch should be committed once its events were handled or dead-lettered");
+            for (Long orderId : orderIds) {
+                assertEquals(orderId.equals(poisonId) ? OrderStatus.PENDING : OrderStatus.PROCESSING,
+                        orderRepository.findById(orderId).orElseThrow().getStatus());
+            }
+            List<ConsumerRecord<String, byte[]>> deadLetters = deadLettersOf(key);
+            assertEquals(1, deadLetters.size(), "Only the poison event should be dead-lettered");
+            assertEquals(poisonOffset, ByteBuffer.wrap(deadLetters.get(0).headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+        } finally {
+            jdbcTemplate.execute("alter table orders drop constraint ck_test_poison");
+        }
+    }
+
+    private List<Long> createOrders(User user, int count) {
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(new BigDecimal("1.00"));
+            order.setStatus(OrderStatus.PENDING);
+            orderIds.add(orderRepository.save(order).getId());
+        }
+        return orderIds;
+    }
+
+    private long countPending(List<Long> orderIds) {
+        return orderRepository.findAllById(orderIds).stream()
+                .filter(order -> order.getStatus() == OrderStatus.PENDING)
+                .count();
+    }
+
+    // Returns the order id of the event sent at each offset
+    private Map<Long, Long> send(Map<String, List<Long>> ordersByKey, Long userId) throws Exception {
+        DefaultKafkaProducerFactory<String, byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new ByteArraySerializer());
+        try {
+            KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory);
+            Map<Long, CompletableFuture<Long>> offsets = new LinkedHashMap<>();
+            int rounds = ordersByKey.values().stream().mapToInt(List::size).max().orElse(0);
+            for (int i = 0; i < rounds; i++) {
+                for (Map.Entry<String, List<Long>> key : ordersByKey.entrySet()) {
+                    if (i >= key.getValue().size()) {
+                        continue;
+                    }
+                    Long orderId = key.getValue().get(i);
+                    ProducerRecord<String, byte[]> record = new ProducerRecord<>(OrderEventPublisher.TOPIC, key.getKey(),
+                            objectMapper.writeValueAsBytes(new OrderCreatedEvent(orderId, userId, new BigDecimal("1.00"), LocalDateTime.now())));
+                    record.headers().add(OrderEventType.HEADER, OrderEventType.ORDER_CREATED.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+                    offsets.put(orderId, template.send(record).thenApply(result -> result.getRecordMetadata().offset()));
+                }
+            }
+            template.flush();
+            Map<Long, Long> orderByOffset = new LinkedHashMap<>();
+            for (Map.Entry<Long, CompletableFuture<Long>> sent : offsets.entrySet()) {
+                orderByOffset.put(sent.getValue().get(), sent.getKey());
+            }
+            return orderByOffset;
+        } finally {
+            producerFactory.destroy();
+        }
+    }
+
+    private List<ConsumerRecord<String, byte[]>> deadLettersOf(String key) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("key-ordered-dead-letters", "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        List<ConsumerRecord<String, byte[]>> deadLetters = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(DeadLetterService.TOPIC));
+            // Polls on for a while after the first, so a second dead letter would be seen too
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (deadLetters.isEmpty() && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(record -> {
+                    if (key.equals(record.key())) {
+                        deadLetters.add(record);
+                    }
+                });
+            }
+            consumer.poll(Duration.ofSeconds(1)).forEach(record -> {
+                if (key.equals(record.key())) {
+                    deadLetters.add(record);
+                }
+            });
+        }
+        return deadLetters;
+    }
+
+    private long committedOffset() throws Exception {
+        OffsetAndMetadata committed = KafkaTestUtils.getCurrentOffset(broker.getBrokersAsString(), "order-processor-group",
+                OrderEventPublisher.TOPIC, 0);
+        return committed == null ? 0 : committed.offset();
+    }
+
+    // Makes every order update take a while, as under load
+    public static class SlowUpdate implements Trigger {
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Holds up the update of one order for seconds, as for a key whose events are slow to handle
+    public static class HotOrderUpdate implements Trigger {
+
+        static volatile Long hotOrderId;
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) {
+            if (oldRow != null && oldRow[0].equals(hotOrderId)) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Notification;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.NotificationService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends polls of order events through the real notification listener on H2 and an embedded broker.
+ * The readable events of a mixed poll are stored with one insert while an unreadable record goes to
+ * the dead-letter topic. When the insert fails for one row, the others are saved one by one and only
+ * the failing record is dead-lettered.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:notification-batch-listener;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "kafka.order-events.partitions=1",
+        "kafka.order-events.listener-concurrency=1"
+})
+@EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class NotificationBatchListenerTest {
+
+    private static final long UNREADABLE_ORDER = 1099;
+    private static final long UNSTORABLE_ORDER = 2666;
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("A mixed poll stores its readable events with one insert and dead-letters the unreadable one")
+    void testMixedPollIsStoredAsOneBatch() throws Exception {
+        List<Long> orderIds = List.of(1001L, 1002L, 1003L, 1004L, 1005L);
+        List<ProducerRecord<String, byte[]>> poll = new ArrayList<>();
+        orderIds.forEach(orderId -> poll.add(completed(orderId)));
+        poll.add(record(UNREADABLE_ORDER, "{not json".getBytes(StandardCharsets.UTF_8)));
+        sendAsOnePoll(poll);
+
+        List<Notification> stored = awaitNotifications(orderIds);
+        // Rows written by one insert share its timestamp; saving them one by one would not
+        Set<LocalDateTime> insertedAt = new HashSet<>();
+        stored.forEach(notification -> insertedAt.add(notification.getCreatedAt()));
+        assertEquals(1, insertedAt.size(), "The poll's notifications should be stored with one insert");
+
+        ConsumerRecord<String, byte[]> deadLetter = awaitDeadLetter(UNREADABLE_ORDER);
+        assertEquals(DeserializationException.class.getName(), header(deadLetter, KafkaHeaders.DLT_EXCEPTION_FQCN));
+        assertTrue(notificationRepository.findByOrderId(UNREADABLE_ORDER).isEmpty());
+    }
+
+    @Test
+    @DisplayName("A row the database rejects fails only its own record, the rest of the poll is stored")
+    void testFailingRowIsIsolated() throws Exception {
+        jdbcTemplate.execute("alter table notifications add constraint ck_test_unstorable check (order_id <> " + UNSTORABLE_ORDER + ")");
+        try {
+            List<Long> orderIds = List.of(2001L, 2002L, 2003L, 2004L);
+            List<ProducerRecord<String, byte[]>> poll = new ArrayList<>();
+            orderIds.forEach(orderId -> poll.add(completed(orderId)));
+            poll.add(completed(UNSTORABLE_ORDER));
+            sendAsOnePoll(poll);
+
+            awaitNotifications(orderIds);
+            ConsumerRecord<String, byte[]> deadLetter = awaitDeadLetter(UNSTORABLE_ORDER);
+            assertEquals(OrderEventPublisher.TOPIC, header(deadLetter, KafkaHeaders.DLT_ORIGINAL_TOPIC));
+            assertNotNull(header(deadLetter, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+            assertEquals(OrderEventType.ORDER_COMPLETED.getHeaderValue(), header(deadLetter, OrderEventType.HEADER));
+            assertTrue(notificationRepository.findByOrderId(UNSTORABLE_ORDER).isEmpty());
+        } finally {
+            jdbcTemplate.execute("alter table notifications drop constraint ck_test_unstorable");
+        }
+    }
+
+    // The listener is stopped while the records are sent, so it finds all of them in its first poll
+    private void sendAsOnePoll(List<ProducerRecord<String, byte[]>> records) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(NotificationService.LISTENER_ID);
+        container.stop();
+        Map<String, Object> props = KafkaTestUtils.producerProps(broker);
+        DefaultKafkaProducerFactory<String, byte[]> producerFactory =
+                new DefaultKafkaProducerFactory<>(props, new StringSerializer(), new ByteArraySerializer());
+        try {
+            KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory);
+            records.forEach(template::send);
+            template.flush();
+        } finally {
+            producerFactory.destroy();
+        }
+        container.start();
+    }
+
+    private ProducerRecord<String, byte[]> completed(long orderId) {
+        try {
+            return record(orderId, objectMapper.writeValueAsBytes(new OrderCompletedEvent(orderId, LocalDateTime.now())));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ProducerRecord<String, byte[]> record(long orderId, byte[] value) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(OrderEventPublisher.TOPIC, String.valueOf(orderId), value);
+        record.headers().add(OrderEventType.HEADER, OrderEventType.ORDER_COMPLETED.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private List<Notification> awaitNotifications(List<Long> orderIds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            List<Notification> stored = new ArrayList<>();
+            orderIds.forEach(orderId -> stored.addAll(notificationRepository.findByOrderId(orderId)));
+            if (stored.size() == orderIds.size()) {
+                return stored;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Only " + stored.size() + " of " + orderIds.size() + " notifications were stored");
+            Thread.sleep(100);
+        }
+    }
+
+    private ConsumerRecord<String, byte[]> awaitDeadLetter(long orderId) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("dead-letters-" + orderId, "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(DeadLetterService.TOPIC));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(200))) {
+                    if (String.valueOf(orderId).equals(record.key())) {
+                        return record;
+                    }
+                }
+            }
+        }
+        return fail("Order " + orderId + " was not dead-lettered");
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String key) {
+        return record.headers().lastHeader(key) == null ? null : new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
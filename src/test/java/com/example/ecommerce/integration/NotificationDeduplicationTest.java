@@ -0,0 +1,135 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Notification;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderExpiredEvent;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.DedupWindow;
+import com.example.ecommerce.service.InProcessOrderEventTransport;
+import com.example.ecommerce.service.NotificationService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Feeds the notification listener redelivered order events on H2: duplicates within a poll and
+ * within the dedup window are dropped in memory, and a listener that has not seen them before is
+ * stopped by the unique index without failing its batch. The window itself forgets keys once they
+ * are older than it and never holds more than its limit. Inserted notifications take their ids from
+ * the same sequence blocks as those saved through JPA.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:notification-dedup;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "spring.kafka.bootstrap-servers=localhost:1"
+})
+@ActiveProfiles(InProcessOrderEventTransport.PROFILE)
+class NotificationDeduplicationTest {
+
+    private static final long COMPLETED_ORDER = 900_001;
+    private static final long EXPIRED_ORDER = 900_002;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private DeadLetterService deadLetterService;
+
+    @Test
+    @DisplayName("Redelivered order events store each notification once")
+    void testRedeliveredEventsAreDropped() {
+        List<ConsumerRecord<String, Object>> poll = List.of(
+                record(0, new OrderCompletedEvent(COMPLETED_ORDER, LocalDateTime.now())),
+                record(1, new OrderExpiredEvent(EXPIRED_ORDER, LocalDateTime.now())),
+                record(2, new OrderCompletedEvent(COMPLETED_ORDER, LocalDateTime.now())));
+
+        notificationService.handleOrderEvents(poll, null);
+        assertNotified();
+
+        // Redelivered after a rebalance: still in the window
+        notificationService.handleOrderEvents(poll, null);
+        assertNotified();
+
+        // Seen by a listener whose window does not have them, as after a restart
+        NotificationService restarted = new NotificationService(notificationRepository, deadLetterService,
+                Duration.ofMinutes(10), 10, 1000);
+        restarted.handleOrderEvents(poll, null);
+        assertNotified();
+    }
+
+    @Test
+    @DisplayName("Notifications inserted ignoring duplicates take their ids from the same blocks as saved ones")
+    void testInsertedIdsShareTheSequenceBlocks() {
+        List<Notification> inserted = new ArrayList<>();
+        List<Notification> saved = new ArrayList<>();
+        for (long orderId = 910_001; orderId <= 910_060; orderId++) {
+            inserted.add(new Notification(null, orderId, "ORDER_COMPLETED", "Inserted", null));
+            saved.add(new Notification(null, orderId, "ORDER_EXPIRED", "Saved", null));
+        }
+        notificationRepository.insertIgnoringDuplicates(inserted);
+        notificationRepository.saveAll(saved);
+        notificationRepository.insertIgnoringDuplicates(inserted.subList(0, 10));
+
+        List<Long> ids = LongStream.rangeClosed(910_001, 910_060)
+                .boxed()
+                .flatMap(orderId -> notificationRepository.findByOrderId(orderId).stream())
+                .map(Notification::getId)
+                .toList();
+        assertEquals(120, ids.size());
+        assertEquals(120, new HashSet<>(ids).size(), "Ids should not collide across both insert paths");
+        long span = Collections.max(ids) - Collections.min(ids);
+        // A sequence value per row would skip a whole block of 50 ids each time
+        assertTrue(span < 120 + 2 * 50, "120 notifications should take a few blocks of ids, but span " + span);
+    }
+
+    @Test
+    @DisplayName("The dedup window forgets old keys and stays within its size")
+    void testDedupWindowIsBounded() throws Exception {
+        DedupWindow window = new DedupWindow(Duration.ofMillis(200), 4, 100);
+        window.add(42);
+        assertTrue(window.contains(42));
+        Thread.sleep(300);
+        assertFalse(window.contains(42), "Keys older than the window should be forgotten");
+
+        for (long key = 1; key <= 1000; key++) {
+            window.add(key);
+        }
+        assertTrue(window.size() <= 100, "The window holds " + window.size() + " keys");
+        assertTrue(window.contains(1000), "The newest key should be kept");
+    }
+
+    private void assertNotified() {
+        List<Notification> completed = notificationRepository.findByOrderId(COMPLETED_ORDER);
+        assertEquals(1, completed.size());
+        assertEquals("ORDER_COMPLETED", completed.get(0).getType());
+        List<Notification> expired = notificationRepository.findByOrderId(EXPIRED_ORDER);
+        assertEquals(1, expired.size());
+        assertEquals("ORDER_EXPIRED", expired.get(0).getType());
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, Object event) {
+        return new ConsumerRecord<>(OrderEventPublisher.TOPIC, 0, offset, null, event);
+    }
+}
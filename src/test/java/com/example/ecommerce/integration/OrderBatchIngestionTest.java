@@ -0,0 +1,103 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.order.OrderBatchResponseDTO;
+import com.example.ecommerce.dto.order.OrderBatchResultDTO;
+import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderRequestDTO;
+import com.example.ecommerce.dto.product.ProductRequestDTO;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.InProcessOrderEventTransport;
+import com.example.ecommerce.service.OrderService;
+import com.example.ecommerce.service.ProductCatalogCache;
+import com.example.ecommerce.service.ProductService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends a batch whose chunk holds one order that passes validation and pricing but cannot be
+ * inserted: the chunk's transaction fails, its orders are saved one by one, and only that order is
+ * reported as failed.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-batch-ingestion;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "spring.kafka.bootstrap-servers=localhost:1"
+})
+@ActiveProfiles(InProcessOrderEventTransport.PROFILE)
+class OrderBatchIngestionTest {
+
+    private static final int ORDERS = 10;
+    private static final int BAD_ORDER = 4;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    @DisplayName("One order that fails to insert does not fail the rest of its chunk")
+    void testBadOrderIsIsolated() {
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("Batch Product", "Kept", new BigDecimal("3.00"), 100, 0)).getId();
+        // Still cached after its row is gone, so the order passes the lookups and only its insert fails
+        Long goneProductId = productService.createProduct(
+                new ProductRequestDTO("Gone Product", "Deleted behind the cache", new BigDecimal("3.00"), 100, 0)).getId();
+        assertNotNull(productCatalogCache.get(goneProductId));
+        productRepository.deleteById(goneProductId);
+
+        List<OrderRequestDTO> requests = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            // Expired orders hold no stock, so the missing product is not caught by the reservation either
+            Long itemProductId = i == BAD_ORDER ? goneProductId : productId;
+            OrderStatus status = i == BAD_ORDER ? OrderStatus.EXPIRED : OrderStatus.PENDING;
+            OrderItemDTO item = new OrderItemDTO(null, itemProductId, null, 1, new BigDecimal("3.00"));
+            requests.add(new OrderRequestDTO(userId, new BigDecimal("3.00"), status, List.of(item)));
+        }
+
+        OrderBatchResponseDTO response = orderService.createOrders(requests);
+
+        assertEquals(ORDERS - 1, response.getCreated());
+        assertEquals(1, response.getFailed());
+        for (OrderBatchResultDTO result : response.getResults()) {
+            if (result.getIndex() == BAD_ORDER) {
+                assertFalse(result.isCreated());
+                assertEquals("Order could not be saved", result.getError());
+            } else {
+                assertTrue(result.isCreated(), "Order " + result.getIndex() + " should be created: " + result.getError());
+                assertTrue(orderRepository.existsById(result.getOrderId()));
+            }
+        }
+        assertEquals(100 - (ORDERS - 1), productRepository.findById(productId).orElseThrow().getStock(),
+                "Stock should only be taken once for each created order");
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderRequestDTO;
+import com.example.ecommerce.dto.product.ProductRequestDTO;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.NotificationService;
+import com.example.ecommerce.service.OrderEventConsumer;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.example.ecommerce.service.OrderService;
+import com.example.ecommerce.service.ProductService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application against an embedded broker with a non-default partition count and listener
+ * concurrency: order-events gets the configured partitions, each order listener runs the configured
+ * consumers, which share the partitions between them, and an order's events are keyed by its id, so
+ * they land on the partition its key hashes to and are consumed by one consumer of each group.
+ * The throughput this buys is measured by {@link OrderEventPartitionThroughputTest}.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-event-partitions;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "kafka.order-events.partitions=" + OrderEventPartitionScalingTest.PARTITIONS,
+        "kafka.order-events.listener-concurrency=" + OrderEventPartitionScalingTest.CONCURRENCY
+})
+@EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class OrderEventPartitionScalingTest {
+
+    static final int PARTITIONS = 4;
+    static final int CONCURRENCY = 2;
+
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Test
+    @DisplayName("order-events and its listeners use the configured partitions and consumers, keyed by order id")
+    void testPartitionsConsumersAndKeys() throws Exception {
+        assertEquals(PARTITIONS, kafkaAdmin.describeTopics(OrderEventPublisher.TOPIC)
+                .get(OrderEventPublisher.TOPIC).partitions().size());
+
+        for (String listenerId : List.of(OrderEventConsumer.LISTENER_ID, NotificationService.LISTENER_ID)) {
+            ConcurrentMessageListenerContainer<?, ?> container = listenerContainer(listenerId);
+            assertEquals(CONCURRENCY, container.getConcurrency(), listenerId + " should run the configured consumers");
+            awaitAllPartitionsAssigned(container);
+        }
+
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("Partitioned Product", "Keyed", new BigDecimal("2.00"), 10, 0)).getId();
+        OrderItemDTO item = new OrderItemDTO(null, productId, null, 1, new BigDecimal("2.00"));
+        Long orderId = orderService.createOrder(
+                new OrderRequestDTO(userId, new BigDecimal("2.00"), OrderStatus.PENDING, List.of(item))).getId();
+
+        ConsumerRecord<String, byte[]> created = awaitOrderCreated(orderId);
+        byte[] key = String.valueOf(orderId).getBytes(StandardCharsets.UTF_8);
+        assertEquals(Utils.toPositive(Utils.murmur2(key)) % PARTITIONS, created.partition(),
+                "The event should be on the partition its order id hashes to");
+
+        TopicPartition partition = new TopicPartition(OrderEventPublisher.TOPIC, created.partition());
+        long holders = listenerContainer(OrderEventConsumer.LISTENER_ID).getContainers().stream()
+                .filter(child -> child.getAssignedPartitions().contains(partition))
+                .count();
+        assertEquals(1, holders, "Exactly one order-processor consumer should own the order's partition");
+    }
+
+    private ConcurrentMessageListenerContainer<?, ?> listenerContainer(String listenerId) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(listenerId);
+        assertInstanceOf(ConcurrentMessageListenerContainer.class, container);
+        return (ConcurrentMessageListenerContainer<?, ?>) container;
+    }
+
+    // Every consumer gets its share of the partitions once the group has settled
+    private static void awaitAllPartitionsAssigned(ConcurrentMessageListenerContainer<?, ?> container) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            Set<TopicPartition> assigned = new HashSet<>();
+            boolean balanced = true;
+            for (MessageListenerContainer child : container.getContainers()) {
+                Collection<TopicPartition> partitions = child.getAssignedPartitions();
+                balanced &= partitions != null && partitions.size() == PARTITIONS / CONCURRENCY;
+                if (partitions != null) {
+                    assigned.addAll(partitions);
+                }
+            }
+            if (balanced && assigned.size() == PARTITIONS) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline,
+                    container.getListenerId() + " consumers were not assigned the partitions evenly: " + assigned);
+            Thread.sleep(100);
+        }
+    }
+
+    private ConsumerRecord<String, byte[]> awaitOrderCreated(Long orderId) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("partition-scaling-test", "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(OrderEventPublisher.TOPIC));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(200))) {
+                    Header type = record.headers().lastHeader(OrderEventType.HEADER);
+                    if (String.valueOf(orderId).equals(record.key()) && type != null
+                            && OrderEventType.ORDER_CREATED.getHeaderValue().equals(new String(type.value(), StandardCharsets.UTF_8))) {
+                        return record;
+                    }
+                }
+            }
+        }
+        return fail("No OrderCreatedEvent keyed by order " + orderId + " was published");
+    }
+}
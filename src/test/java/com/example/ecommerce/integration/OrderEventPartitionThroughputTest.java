@@ -0,0 +1,141 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.service.OrderEventPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Consumes order events keyed the way {@link OrderEventPublisher} keys them, with a fixed amount of
+ * work per event, and checks that more partitions and consumers shorten the run almost
+ * proportionally while each order's events are still handled in order. A wall-clock measurement, so it
+ * only runs with the benchmark profile; {@link OrderEventPartitionScalingTest} checks the configuration.
+ */
+@EmbeddedKafka
+@Tag("benchmark")
+@Slf4j
+class OrderEventPartitionThroughputTest {
+
+    private static final int ORDERS = 200;
+    private static final int EVENTS_PER_ORDER = 3;
+    private static final long WORK_PER_EVENT_MS = 5;
+    private static final double MIN_EFFICIENCY = 0.7;
+
+    @Test
+    @DisplayName("Throughput grows close to linearly with partitions and consumers, per-order order is kept")
+    void testThroughputScalesWithPartitionsAndConsumers(EmbeddedKafkaBroker broker) throws Exception {
+        long single = consumeAll(broker, 1);
+        for (int consumers : new int[]{2, 4}) {
+            long elapsed = consumeAll(broker, consumers);
+            double speedup = (double) single / elapsed;
+            log.info("{} partitions/consumers: {} ms vs {} ms with one ({}x)", consumers, elapsed, single, String.format("%.2f", speedup));
+            assertTrue(speedup >= consumers * MIN_EFFICIENCY,
+                    "Expected close to " + consumers + "x with " + consumers + " consumers, got " + String.format("%.2f", speedup) + "x");
+        }
+    }
+
+    // Returns the time from the first send until every event was handled
+    private long consumeAll(EmbeddedKafkaBroker broker, int consumers) throws Exception {
+        String topic = OrderEventPublisher.TOPIC + "-scaling-" + consumers;
+        broker.addTopics(new NewTopic(topic, consumers, (short) 1));
+
+        int total = ORDERS * EVENTS_PER_ORDER;
+        CountDownLatch handled = new CountDownLatch(total);
+        Map<String, Integer> lastSequence = new ConcurrentHashMap<>();
+        List<String> outOfOrder = new ArrayList<>();
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("scaling-" + consumers, "false", broker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, String> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                consumerProps, new StringDeserializer(), new StringDeserializer());
+        ContainerProperties containerProperties = new ContainerProperties(topic);
+        containerProperties.setMessageListener((MessageListener<String, String>) record -> {
+            int sequence = Integer.parseInt(record.value());
+            Integer previous = lastSequence.put(record.key(), sequence);
+            if (previous != null && previous >= sequence) {
+                synchronized (outOfOrder) {
+                    outOfOrder.add(record.key());
+                }
+            }
+            sleep(WORK_PER_EVENT_MS);
+            handled.countDown();
+        });
+        ConcurrentMessageListenerContainer<String, String> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory, containerProperties);
+        container.setConcurrency(consumers);
+        container.start();
+
+        DefaultKafkaProducerFactory<String, String> producerFactory = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer());
+        try {
+            awaitOnePartitionEach(container);
+            KafkaTemplate<String, String> template = new KafkaTemplate<>(producerFactory);
+
+            long startedAt = System.nanoTime();
+            for (int sequence = 0; sequence < EVENTS_PER_ORDER; sequence++) {
+                for (long orderId = 1; orderId <= ORDERS; orderId++) {
+                    ProducerRecord<String, String> record = new ProducerRecord<>(topic, String.valueOf(orderId), String.valueOf(sequence));
+                    record.headers().add(OrderEventType.HEADER, OrderEventType.ORDER_CREATED.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+                    template.send(record);
+                }
+            }
+            template.flush();
+
+            assertTrue(handled.await(60, TimeUnit.SECONDS), "Not every event was consumed");
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+            assertTrue(outOfOrder.isEmpty(), "Events of orders " + outOfOrder + " were consumed out of order");
+            assertEquals(ORDERS, lastSequence.size());
+            assertTrue(lastSequence.values().stream().allMatch(sequence -> sequence == EVENTS_PER_ORDER - 1));
+            return elapsed;
+        } finally {
+            container.stop();
+            producerFactory.destroy();
+        }
+    }
+
+    // Every consumer must hold its partition before sending; a late joiner would only get one after
+    // the first consumer finished its current poll, which is exactly the work being measured
+    private static void awaitOnePartitionEach(ConcurrentMessageListenerContainer<?, ?> container) {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!container.getContainers().stream().allMatch(child -> child.getAssignedPartitions() != null
+                && child.getAssignedPartitions().size() == 1)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Consumers were not assigned one partition each");
+            sleep(50);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.User;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.DeadLetterService;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends order events straight to order-events, past the outbox, and follows them through the real
+ * listeners: typed events only reach the listener that accepts their type, events produced before the
+ * type header existed are still typed and handled, and a headerless event whose type cannot be told
+ * is dead-lettered by each listener instead of being dropped.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-event-routing;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "kafka.order-events.partitions=1",
+        "kafka.order-events.listener-concurrency=1",
+        "payment.processing-delay-ms=100",
+        "payment.success-rate=1"
+})
+@EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class OrderEventRoutingTest {
+
+    private static final long LEGACY_COMPLETED_ORDER = 3_000_001;
+    private static final long TYPED_COMPLETED_ORDER = 3_000_002;
+    private static final long UNKNOWN_ORDER = 3_000_003;
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Test
+    @DisplayName("Events are routed by their type header, legacy headerless events are still handled, unknown ones dead-lettered")
+    void testRoutingByTypeHeader() throws Exception {
+        User user = userRepository.findAll().get(0);
+        Order order = new Order();
+        order.setUser(user);
+        order.setTotal(new BigDecimal("4.00"));
+        order.setStatus(OrderStatus.PENDING);
+        Long orderId = orderRepository.save(order).getId();
+
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+        // As sent before the type header: keyed by type and id, with at most Spring's JSON type header
+        records.add(new ProducerRecord<>(OrderEventPublisher.TOPIC, "order-created-" + orderId,
+                json(new OrderCreatedEvent(orderId, user.getId(), new BigDecimal("4.00"), LocalDateTime.now()))));
+        ProducerRecord<String, byte[]> legacyCompleted = new ProducerRecord<>(OrderEventPublisher.TOPIC,
+                "order-completed-" + LEGACY_COMPLETED_ORDER, json(new OrderCompletedEvent(LEGACY_COMPLETED_ORDER, LocalDateTime.now())));
+        legacyCompleted.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME,
+                OrderCompletedEvent.class.getName().getBytes(StandardCharsets.UTF_8));
+        records.add(legacyCompleted);
+        // Only the notification listener accepts it; the order listener's filter must drop it
+        ProducerRecord<String, byte[]> typedCompleted = new ProducerRecord<>(OrderEventPublisher.TOPIC,
+                String.valueOf(TYPED_COMPLETED_ORDER), json(new OrderCompletedEvent(TYPED_COMPLETED_ORDER, LocalDateTime.now())));
+        typedCompleted.headers().add(OrderEventType.HEADER, OrderEventType.ORDER_COMPLETED.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        records.add(typedCompleted);
+        // Completed or expired? Without any header the payload cannot tell
+        records.add(new ProducerRecord<>(OrderEventPublisher.TOPIC, String.valueOf(UNKNOWN_ORDER),
+                json(new OrderCompletedEvent(UNKNOWN_ORDER, LocalDateTime.now()))));
+        send(records);
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (orderRepository.findById(orderId).orElseThrow().getStatus() == OrderStatus.PENDING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertNotEquals(OrderStatus.PENDING, orderRepository.findById(orderId).orElseThrow().getStatus(),
+                "The legacy order-created event should have been handled");
+        for (long notifiedOrder : new long[]{LEGACY_COMPLETED_ORDER, TYPED_COMPLETED_ORDER}) {
+            while (notificationRepository.findByOrderId(notifiedOrder).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, notificationRepository.findByOrderId(notifiedOrder).size(), "Order " + notifiedOrder + " should be notified");
+        }
+
+        // Both listeners dead-letter the unknown event; as it was sent last, anything else they
+        // dead-lettered, such as an event the filter let through, is there by then too
+        List<ConsumerRecord<String, byte[]>> deadLetters = readDeadLetters(2);
+        for (ConsumerRecord<String, byte[]> deadLetter : deadLetters) {
+            assertEquals(String.valueOf(UNKNOWN_ORDER), deadLetter.key());
+            assertEquals(DeserializationException.class.getName(),
+                    new String(deadLetter.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN).value(), StandardCharsets.UTF_8));
+        }
+        assertTrue(notificationRepository.findByOrderId(UNKNOWN_ORDER).isEmpty());
+    }
+
+    private byte[] json(Object event) throws Exception {
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    private void send(List<ProducerRecord<String, byte[]>> records) {
+        DefaultKafkaProducerFactory<String, byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new ByteArraySerializer());
+        try {
+            KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory);
+            records.forEach(template::send);
+            template.flush();
+        } finally {
+            producerFactory.destroy();
+        }
+    }
+
+    // Reads the dead letters until the expected number arrived, then a little longer for any extra ones
+    private List<ConsumerRecord<String, byte[]>> readDeadLetters(int expected) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("routing-dead-letters", "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory =
+                new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(DeadLetterService.TOPIC));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (records.size() < expected && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(records::add);
+            }
+            consumer.poll(Duration.ofSeconds(1)).forEach(records::add);
+        }
+        assertEquals(expected, records.size(), "Unexpected dead letters: " + records.stream().map(ConsumerRecord::key).toList());
+        return records;
+    }
+}
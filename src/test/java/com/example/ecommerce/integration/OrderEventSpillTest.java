@@ -0,0 +1,197 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.spill.SpillLog;
+import com.example.ecommerce.service.KafkaOrderEventTransport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The spill log keeps its records across reopening and drops a record cut short by a crash; the Kafka
+ * transport spills events while their topic cannot be reached and sends them, in order and ahead of
+ * newer events, once it can.
+ */
+@EmbeddedKafka(brokerProperties = "auto.create.topics.enable=false")
+class OrderEventSpillTest {
+
+    private static final int EVENTS = 200;
+    private static final int RELAY_BATCH = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    @DisplayName("Records survive reopening the spill log, and a torn last record is dropped")
+    void testSpillLogReopens(@TempDir Path directory) throws Exception {
+        SpillLog spillLog = new SpillLog(directory, 1024);
+        for (int i = 0; i < 100; i++) {
+            spillLog.append(("record-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        spillLog.force();
+        assertTrue(spillLog.getSegmentCount() > 1, "Records should have rolled over into several segments");
+
+        SpillLog.Batch firstBatch = spillLog.read(30);
+        assertEquals(30, firstBatch.records().size());
+        spillLog.advance(firstBatch.next());
+
+        // A record whose data does not match its checksum, as if the process died while writing it
+        spillLog.append("torn-record".getBytes(StandardCharsets.UTF_8));
+        spillLog.force();
+        corrupt(directory, "torn-record");
+
+        SpillLog reopened = new SpillLog(directory, 1024);
+        List<String> remaining = readAll(reopened);
+        assertEquals(70, remaining.size());
+        assertEquals("record-30", remaining.get(0));
+        assertEquals("record-99", remaining.get(69));
+
+        reopened.append("after-reopen".getBytes(StandardCharsets.UTF_8));
+        assertEquals("after-reopen", readAll(reopened).get(70));
+    }
+
+    @Test
+    @DisplayName("Events are spilled while Kafka cannot take them and drained in order once it can")
+    void testSpillAndDrain(EmbeddedKafkaBroker broker, @TempDir Path directory) throws Exception {
+        String topic = "order-events-spill-test";
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+        producerProps.put("key.serializer", StringSerializer.class);
+        DefaultKafkaProducerFactory<String, Object> producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        KafkaOrderEventTransport transport = new KafkaOrderEventTransport(producerFactory, objectMapper, "json", 5000,
+                directory.toString(), DataSize.ofKilobytes(4), 200, 500, 4000);
+        try {
+            // The topic does not exist yet, so metadata for it never arrives, as with a broker that is down
+            relay(transport, topic, 0, EVENTS);
+            assertTrue(transport.isSpilling(), "Events should be spilled while the topic is unreachable");
+            assertTrue(segmentFiles(directory) > 1, "Spilled events should fill several segments");
+
+            broker.addTopics(new NewTopic(topic, 1, (short) 1));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (transport.isSpilling() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertFalse(transport.isSpilling(), "The spill log was not drained after the topic became reachable");
+            assertTrue(segmentFiles(directory) <= 1, "Drained segments should be deleted");
+
+            // Straight to Kafka again, behind the drained events
+            relay(transport, topic, EVENTS, EVENTS + RELAY_BATCH);
+
+            List<Long> received = new ArrayList<>(new LinkedHashSet<>(consumeOrderIds(broker, topic, EVENTS + RELAY_BATCH)));
+            List<Long> expected = new ArrayList<>();
+            for (long orderId = 0; orderId < EVENTS + RELAY_BATCH; orderId++) {
+                expected.add(orderId);
+            }
+            assertEquals(expected, received, "Events should reach Kafka once each, in the order they were relayed");
+        } finally {
+            transport.shutdown();
+            producerFactory.destroy();
+        }
+    }
+
+    // Sends events the way OutboxRelay does: a round of sends, a flush, then the acknowledged prefix is done
+    private void relay(KafkaOrderEventTransport transport, String topic, long from, long to) throws Exception {
+        long next = from;
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (next < to) {
+            assertTrue(System.currentTimeMillis() < deadline, "Relaying did not make progress");
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            for (long orderId = next; orderId < Math.min(next + RELAY_BATCH, to); orderId++) {
+                String payload = objectMapper.writeValueAsString(new OrderCompletedEvent(orderId, LocalDateTime.now()));
+                try {
+                    sends.add(transport.send(topic, String.valueOf(orderId), OrderEventType.ORDER_COMPLETED, payload));
+                } catch (Exception e) {
+                    break;
+                }
+            }
+            transport.flush();
+            for (CompletableFuture<?> send : sends) {
+                try {
+                    send.get(10, TimeUnit.SECONDS);
+                    next++;
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<Long> consumeOrderIds(EmbeddedKafkaBroker broker, String topic, int expected) throws Exception {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("spill-test", "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, byte[]> factory = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+        List<Long> orderIds = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = factory.createConsumer()) {
+            consumer.subscribe(List.of(topic));
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (orderIds.size() < expected && System.currentTimeMillis() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(200))) {
+                    orderIds.add(objectMapper.readValue(record.value(), OrderCompletedEvent.class).getOrderId());
+                }
+            }
+        }
+        return orderIds;
+    }
+
+    private static List<String> readAll(SpillLog spillLog) {
+        List<String> records = new ArrayList<>();
+        for (byte[] record : spillLog.read(Integer.MAX_VALUE).records()) {
+            records.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return records;
+    }
+
+    // Flips a byte of the record's data on disk
+    private static void corrupt(Path directory, String record) throws Exception {
+        byte[] needle = record.getBytes(StandardCharsets.UTF_8);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".log")).toList()) {
+                byte[] content = Files.readAllBytes(file);
+                for (int i = 0; i + needle.length <= content.length; i++) {
+                    if (Arrays.equals(content, i, i + needle.length, needle, 0, needle.length)) {
+                        content[i] ^= 0x7f;
+                        Files.write(file, content);
+                        return;
+                    }
+                }
+            }
+        }
+        fail("Record " + record + " not found in the spill log");
+    }
+
+    private static long segmentFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.event.OrderCompletedEvent;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.event.OrderEventCodec;
+import com.example.ecommerce.event.OrderEventDeserializer;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.OrderExpiredEvent;
+import com.example.ecommerce.event.OrderStatusChangedEvent;
+import com.example.ecommerce.event.PaymentRetryEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.JacksonUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips of the order event wire formats through {@link OrderEventDeserializer} and their payload
+ * sizes, plus a rough comparison of decode cost between the former JSON-to-Map-then-convert path, typed
+ * JSON and the {@link OrderEventCodec} binary format, which only runs with the benchmark profile.
+ */
+@Slf4j
+class OrderEventWireFormatTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 3, 14, 15, 9, 26, 535_897_000);
+    private static final int WARMUP_ROUNDS = 100_000;
+    private static final int MEASURED_ROUNDS = 300_000;
+
+    // Keeps the decoded results observable so the benchmark loops cannot be optimised away
+    private static volatile int blackhole;
+
+    // Mirrors how the application's ObjectMapper writes outbox payloads
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final List<Object> events = List.of(
+            new OrderCreatedEvent(1234567L, 42L, new BigDecimal("199.98"), TIMESTAMP),
+            new OrderCompletedEvent(1234567L, TIMESTAMP),
+            new OrderExpiredEvent(1234567L, TIMESTAMP),
+            new PaymentRetryEvent(1234567L, 2, TIMESTAMP),
+            new OrderStatusChangedEvent(1234567L, OrderStatus.PROCESSING, TIMESTAMP)
+    );
+
+    @Test
+    @DisplayName("Every order event survives a JSON and a binary round trip unchanged")
+    void testRoundTrips() throws Exception {
+        OrderEventDeserializer deserializer = deserializer(null);
+        for (Object event : events) {
+            OrderEventType type = typeOf(event);
+            assertEquals(event, deserializer.deserialize("order-events", headers(type, false), objectMapper.writeValueAsBytes(event)));
+            assertEquals(event, deserializer.deserialize("order-events", headers(type, true), OrderEventCodec.encode(type, event)));
+        }
+    }
+
+    @Test
+    @DisplayName("Binary totals keep their exact scale and value")
+    void testBinaryTotalPrecision() {
+        for (String total : List.of("0.00", "0.01", "99999999.99", "-5.5", "123456789012345678901234567890.123")) {
+            OrderCreatedEvent event = new OrderCreatedEvent(1L, 2L, new BigDecimal(total), TIMESTAMP);
+            OrderCreatedEvent decoded = (OrderCreatedEvent) OrderEventCodec.decode(OrderEventType.ORDER_CREATED,
+                    OrderEventCodec.encode(OrderEventType.ORDER_CREATED, event));
+            assertEquals(new BigDecimal(total), decoded.getTotal());
+            assertEquals(new BigDecimal(total).scale(), decoded.getTotal().scale());
+        }
+    }
+
+    @Test
+    @DisplayName("Events of types the consumer does not accept are not decoded")
+    void testUnacceptedTypesAreSkipped() throws Exception {
+        OrderEventDeserializer deserializer = deserializer("ORDER_COMPLETED,ORDER_EXPIRED");
+        Object created = events.get(0);
+
+        assertNull(deserializer.deserialize("order-events", headers(OrderEventType.ORDER_CREATED, false), objectMapper.writeValueAsBytes(created)));
+        // Not even an unreadable payload is looked at
+        assertNull(deserializer.deserialize("order-events", headers(OrderEventType.ORDER_CREATED, true), new byte[]{99}));
+        assertNull(deserializer.deserialize("order-events", new RecordHeaders(), objectMapper.writeValueAsBytes(created)));
+    }
+
+    @Test
+    @DisplayName("Binary payloads with an unknown version or a wrong length are rejected")
+    void testMalformedBinaryPayloadsAreRejected() {
+        byte[] valid = OrderEventCodec.encode(OrderEventType.ORDER_COMPLETED, events.get(1));
+
+        byte[] otherVersion = valid.clone();
+        otherVersion[0] = OrderEventCodec.VERSION + 1;
+        assertThrows(SerializationException.class, () -> OrderEventCodec.decode(OrderEventType.ORDER_COMPLETED, otherVersion));
+        assertThrows(SerializationException.class, () -> OrderEventCodec.decode(OrderEventType.ORDER_COMPLETED, Arrays.copyOf(valid, valid.length - 1)));
+        assertThrows(SerializationException.class, () -> OrderEventCodec.decode(OrderEventType.ORDER_COMPLETED, Arrays.copyOf(valid, valid.length + 1)));
+    }
+
+    @Test
+    @DisplayName("Binary payloads are well under half the size of their JSON")
+    void testBinaryIsCompact() throws Exception {
+        for (Object event : events) {
+            OrderEventType type = typeOf(event);
+            int json = objectMapper.writeValueAsBytes(event).length;
+            int binary = OrderEventCodec.encode(type, event).length;
+            assertTrue(binary * 2 < json, "Binary " + type + " takes " + binary + " bytes, JSON " + json);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Benchmark: bytes per event and decode cost of the wire formats")
+    void benchmarkWireFormats() throws Exception {
+        OrderEventDeserializer deserializer = deserializer(null);
+        StringBuilder table = new StringBuilder(String.format("%n%-22s %12s %12s %18s %18s %18s",
+                "event", "json bytes", "binary bytes", "json->map ns/op", "json typed ns/op", "binary ns/op"));
+
+        for (Object event : events) {
+            OrderEventType type = typeOf(event);
+            byte[] json = objectMapper.writeValueAsBytes(event);
+            byte[] binary = OrderEventCodec.encode(type, event);
+            Headers jsonHeaders = headers(type, false);
+            Headers binaryHeaders = headers(type, true);
+
+            // The path before typed deserialization: JSON into a LinkedHashMap, then converted to the event class
+            double viaMap = nanosPerDecode(() -> {
+                try {
+                    Map<?, ?> map = objectMapper.readValue(json, LinkedHashMap.class);
+                    return objectMapper.convertValue(map, type.getEventClass());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            double typedJson = nanosPerDecode(() -> deserializer.deserialize("order-events", jsonHeaders, json));
+            double binaryDecode = nanosPerDecode(() -> deserializer.deserialize("order-events", binaryHeaders, binary));
+
+            table.append(String.format("%n%-22s %12d %12d %18.0f %18.0f %18.0f",
+                    type, json.length, binary.length, viaMap, typedJson, binaryDecode));
+        }
+        log.info("Order event wire formats:{}", table);
+    }
+
+    private static double nanosPerDecode(Supplier<Object> decode) {
+        int hash = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            hash += decode.get().hashCode();
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            hash += decode.get().hashCode();
+        }
+        double nanos = (double) (System.nanoTime() - startedAt) / MEASURED_ROUNDS;
+        blackhole = hash;
+        return nanos;
+    }
+
+    private static OrderEventDeserializer deserializer(String acceptedTypes) {
+        OrderEventDeserializer deserializer = new OrderEventDeserializer();
+        deserializer.configure(acceptedTypes == null ? Map.of() : Map.of(OrderEventDeserializer.ACCEPTED_TYPES_CONFIG, acceptedTypes), false);
+        return deserializer;
+    }
+
+    private static OrderEventType typeOf(Object event) {
+        return OrderEventType.fromHeaderValue(event.getClass().getSimpleName()).orElseThrow();
+    }
+
+    private static Headers headers(OrderEventType type, boolean binary) {
+        Headers headers = new RecordHeaders();
+        headers.add(OrderEventType.HEADER, type.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+        if (binary) {
+            headers.add(OrderEventCodec.FORMAT_HEADER, OrderEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8));
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.User;
+import com.example.ecommerce.event.OrderCreatedEvent;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.InProcessOrderEventTransport;
+import com.example.ecommerce.service.OrderEventConsumer;
+import com.example.ecommerce.service.OrderEventPublisher;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hands the order-created listener one poll of events for many orders, with a redelivered event and
+ * one for an order that is no longer pending: the pending orders move to PROCESSING with a couple of
+ * statements for the whole poll, each gets one payment, and they are completed and notified.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-status-batching;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN",
+        "spring.kafka.bootstrap-servers=localhost:1",
+        "payment.processing-delay-ms=100",
+        "payment.success-rate=1",
+        // The profile's 20ms relay would add a poll every few statements of the handler to the count
+        "outbox.relay.interval-ms=200"
+})
+@ActiveProfiles(InProcessOrderEventTransport.PROFILE)
+class OrderStatusBatchingTest {
+
+    private static final int ORDERS = 50;
+
+    @Autowired
+    private OrderEventConsumer orderEventConsumer;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DisplayName("A poll of order-created events is moved to PROCESSING with a few statements, not a few per order")
+    void testPollIsUpdatedAsOneBatch() throws Exception {
+        User user = userRepository.findAll().get(0);
+        List<Long> pending = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            pending.add(orderRepository.save(order(user, OrderStatus.PENDING)).getId());
+        }
+        Long completed = orderRepository.save(order(user, OrderStatus.COMPLETED)).getId();
+
+        List<ConsumerRecord<String, OrderCreatedEvent>> poll = new ArrayList<>();
+        for (Long orderId : pending) {
+            poll.add(record(poll.size(), orderId, user));
+        }
+        poll.add(record(poll.size(), pending.get(0), user));
+        poll.add(record(poll.size(), completed, user));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        orderEventConsumer.handleOrderEvents(poll, () -> { });
+        long statements = statistics.getPrepareStatementCount() - statementsBefore;
+        // The lock, the update and the batched insert of their status events, with some slack for the
+        // outbox relay polling meanwhile
+        assertTrue(statements < 12, "Moving " + ORDERS + " orders to PROCESSING took " + statements + " statements");
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        for (Long orderId : pending) {
+            Order order = orderRepository.findById(orderId).orElseThrow();
+            while (order.getStatus() != OrderStatus.COMPLETED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                order = orderRepository.findById(orderId).orElseThrow();
+            }
+            assertEquals(OrderStatus.COMPLETED, order.getStatus(), "Order " + orderId + " should be completed");
+
+            while (notificationRepository.findByOrderId(orderId).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, notificationRepository.findByOrderId(orderId).size(),
+                    "Order " + orderId + " should be notified of its completion once");
+        }
+        assertTrue(notificationRepository.findByOrderId(completed).isEmpty(), "An order that was not pending should be left alone");
+    }
+
+    private static Order order(User user, OrderStatus status) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setTotal(new BigDecimal("5.00"));
+        order.setStatus(status);
+        return order;
+    }
+
+    private static ConsumerRecord<String, OrderCreatedEvent> record(long offset, Long orderId, User user) {
+        OrderCreatedEvent event = new OrderCreatedEvent(orderId, user.getId(), new BigDecimal("5.00"), LocalDateTime.now());
+        return new ConsumerRecord<>(OrderEventPublisher.TOPIC, 0, offset, String.valueOf(orderId), event);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderRequestDTO;
+import com.example.ecommerce.dto.order.OrderStatusDTO;
+import com.example.ecommerce.dto.product.ProductRequestDTO;
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.OrderStatusChangedEvent;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.OrderEventPublisher;
+import com.example.ecommerce.service.OrderService;
+import com.example.ecommerce.service.OrderStatusStore;
+import com.example.ecommerce.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ConsumerGroupListing;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Follows an order through the status endpoint on H2 and an embedded broker: its transitions reach
+ * the compacted order-status topic through the outbox and show up in the local status store, and the
+ * tombstone written when it is deleted removes it from the store again. Statuses already on the topic at
+ * startup are rebuilt before the store is used, without a consumer group on the broker, orders the store does not hold are answered from the
+ * database, and finished orders are dropped from the store after the TTL.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-status-store;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "payment.processing-delay-ms=100",
+        "payment.success-rate=1",
+        "kafka.order-events.partitions=1",
+        "order-status.store.terminal-ttl=PT" + OrderStatusStoreTest.TERMINAL_TTL_SECONDS + "S"
+})
+@EmbeddedKafka(partitions = 1, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@AutoConfigureMockMvc
+@WithMockUser
+class OrderStatusStoreTest {
+
+    static final int TERMINAL_TTL_SECONDS = 3;
+    private static final long FIRST_SEEDED_ORDER = 8_000_001;
+    private static final int SEEDED_ORDERS = 500;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStatusStore orderStatusStore;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Test
+    @DisplayName("Status polls follow an order's transitions and its deletion from the status topic")
+    void testStatusFollowsTheOrder() throws Exception {
+        awaitReady();
+        mockMvc.perform(get("/api/orders/{id}/status", Long.MAX_VALUE)).andExpect(status().isNotFound());
+
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("Status Product", "Polled", new BigDecimal("7.00"), 10, 0)).getId();
+        OrderItemDTO item = new OrderItemDTO(null, productId, null, 1, new BigDecimal("7.00"));
+        Long orderId = orderService.createOrder(
+                new OrderRequestDTO(userId, new BigDecimal("7.00"), OrderStatus.PENDING, List.of(item))).getId();
+
+        awaitResponse(orderId, 200, "\"COMPLETED\"");
+        mockMvc.perform(get("/api/orders/{id}/status", orderId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.updatedAt").exists());
+
+        orderService.deleteOrder(orderId);
+        awaitResponse(orderId, 404, "");
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (orderStatusStore.find(orderId).isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(orderStatusStore.find(orderId).isEmpty(), "The tombstone should remove the order from the store");
+    }
+
+    @Test
+    @DisplayName("Statuses on the topic before startup are rebuilt into the store before it answers")
+    void testStoreIsRebuiltFromTheTopic() throws Exception {
+        awaitReady();
+        for (long orderId = FIRST_SEEDED_ORDER; orderId < FIRST_SEEDED_ORDER + SEEDED_ORDERS; orderId++) {
+            assertEquals(OrderStatus.PROCESSING, orderStatusStore.find(orderId).map(OrderStatusDTO::getStatus).orElse(null),
+                    "Order " + orderId + " should be rebuilt by the time the store is ready");
+        }
+        // Not in the database, so only the store can answer
+        mockMvc.perform(get("/api/orders/{id}/status", FIRST_SEEDED_ORDER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("PROCESSING"));
+
+        // Read through assigned partitions, so the broker keeps no group for the store to pile up across restarts
+        try (AdminClient admin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            List<String> groups = admin.listConsumerGroups().all().get(10, TimeUnit.SECONDS).stream()
+                    .map(ConsumerGroupListing::groupId)
+                    .toList();
+            assertTrue(groups.stream().noneMatch(group -> group.startsWith(OrderStatusStore.LISTENER_ID)),
+                    "The status store should not leave a consumer group behind, groups: " + groups);
+        }
+    }
+
+    @Test
+    @DisplayName("An order that never went through the status topic is answered from the database")
+    void testUnknownOrderFallsBackToTheDatabase() throws Exception {
+        awaitReady();
+        // Saved without any outbox event, as orders were before the status topic existed
+        Order order = new Order();
+        order.setUser(userRepository.findAll().get(0));
+        order.setTotal(new BigDecimal("3.00"));
+        order.setStatus(OrderStatus.PROCESSING);
+        Long orderId = orderRepository.save(order).getId();
+        assertTrue(orderStatusStore.find(orderId).isEmpty());
+
+        mockMvc.perform(get("/api/orders/{id}/status", orderId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.status").value("PROCESSING"));
+    }
+
+    @Test
+    @DisplayName("Completed and expired orders are dropped from the store once their status is older than the TTL")
+    void testFinishedOrdersAreDroppedAfterTheTtl() throws Exception {
+        awaitReady();
+        LocalDateTime now = LocalDateTime.now();
+        long stale = 9_000_001, finished = 9_000_002, inProgress = 9_000_003;
+        orderStatusStore.apply(String.valueOf(stale), new OrderStatusChangedEvent(stale, OrderStatus.EXPIRED, now.minusHours(1)));
+        orderStatusStore.apply(String.valueOf(finished), new OrderStatusChangedEvent(finished, OrderStatus.COMPLETED, now));
+        orderStatusStore.apply(String.valueOf(inProgress), new OrderStatusChangedEvent(inProgress, OrderStatus.PROCESSING, now.minusHours(1)));
+        assertTrue(orderStatusStore.find(stale).isEmpty(), "A finished order past the TTL should not be stored at all");
+        assertTrue(orderStatusStore.find(finished).isPresent());
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(TERMINAL_TTL_SECONDS) + 500);
+        orderStatusStore.dropExpiredStatuses();
+        assertTrue(orderStatusStore.find(finished).isEmpty(), "The finished order should be dropped after the TTL");
+        assertEquals(OrderStatus.PROCESSING, orderStatusStore.find(inProgress).orElseThrow().getStatus(),
+                "An order still in progress should be kept however old its status is");
+    }
+
+    // The rebuild of the store from the topic has reached the end offsets it started with
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!orderStatusStore.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(orderStatusStore.isReady(), "The status store should catch up with the topic");
+    }
+
+    // Sent while the context starts, before the listener containers do, so the store starts with a backlog
+    @TestConfiguration
+    static class SeededStatusTopic {
+
+        @Bean
+        Object seededStatuses(EmbeddedKafkaBroker broker) throws Exception {
+            ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+            DefaultKafkaProducerFactory<String, byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
+                    KafkaTestUtils.producerProps(broker), new StringSerializer(), new ByteArraySerializer());
+            try {
+                KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory);
+                for (long orderId = FIRST_SEEDED_ORDER; orderId < FIRST_SEEDED_ORDER + SEEDED_ORDERS; orderId++) {
+                    ProducerRecord<String, byte[]> record = new ProducerRecord<>(OrderEventPublisher.STATUS_TOPIC, String.valueOf(orderId),
+                            objectMapper.writeValueAsBytes(new OrderStatusChangedEvent(orderId, OrderStatus.PROCESSING, LocalDateTime.now())));
+                    record.headers().add(OrderEventType.HEADER, OrderEventType.ORDER_STATUS_CHANGED.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+                    template.send(record);
+                }
+                template.flush();
+            } finally {
+                producerFactory.destroy();
+            }
+            return new Object();
+        }
+    }
+
+    // Polls the status endpoint until it answers with the HTTP status and a body containing the fragment
+    private void awaitResponse(Long orderId, int httpStatus, String bodyFragment) throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            MvcResult result = mockMvc.perform(get("/api/orders/{id}/status", orderId)).andReturn();
+            String body = result.getResponse().getContentAsString();
+            if (result.getResponse().getStatus() == httpStatus && body.contains(bodyFragment)) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Status of order " + orderId + " never answered "
+                    + httpStatus + " " + bodyFragment + ", last response: " + result.getResponse().getStatus() + " " + body);
+            Thread.sleep(100);
+        }
+    }
+}
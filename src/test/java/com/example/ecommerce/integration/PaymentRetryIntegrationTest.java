@@ -0,0 +1,239 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.dto.order.OrderItemDTO;
+import com.example.ecommerce.dto.order.OrderRequestDTO;
+import com.example.ecommerce.dto.product.ProductRequestDTO;
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.entity.OrderStatus;
+import com.example.ecommerce.entity.User;
+import com.example.ecommerce.event.OrderEventType;
+import com.example.ecommerce.event.PaymentRetryEvent;
+import com.example.ecommerce.repository.NotificationRepository;
+import com.example.ecommerce.repository.OrderRepository;
+import com.example.ecommerce.repository.ProductRepository;
+import com.example.ecommerce.repository.UserRepository;
+import com.example.ecommerce.service.OrderEventConsumer;
+import com.example.ecommerce.service.OrderService;
+import com.example.ecommerce.service.PaymentRetryPolicy;
+import com.example.ecommerce.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the order flow on H2 and an embedded broker with payments that always fail and short
+ * retry delays: the order goes through every retry topic and is expired as soon as the last
+ * retry fails, long before the expiration job would pick it up. A retry waits on its topic with
+ * its offset uncommitted, so restarting the retry consumer during the backoff does not lose it.
+ * Retries that are due together are attempted side by side rather than one after another on the
+ * listener thread, and are committed once they ran.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:payment-retry;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "payment.processing-delay-ms=" + PaymentRetryIntegrationTest.PROCESSING_DELAY_MS,
+        "payment.success-rate=0",
+        "payment.retry.delays=2s,3s",
+        "kafka.order-events.partitions=1"
+})
+@EmbeddedKafka(partitions = 1, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class PaymentRetryIntegrationTest {
+
+    static final long PROCESSING_DELAY_MS = 100;
+    private static final int DUE_RETRIES = 30;
+
+    private final ObjectMapper objectMapper = JacksonUtils.enhancedObjectMapper();
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private PaymentRetryPolicy retryPolicy;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Test
+    @DisplayName("An order whose payment keeps failing is retried through the retry topics and then expired")
+    void testFailedPaymentsAreRetriedThenExpired() throws Exception {
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("Retry Product", "Retried", new BigDecimal("10.00"), 5, 0)).getId();
+        OrderItemDTO item = new OrderItemDTO(null, productId, null, 2, new BigDecimal("10.00"));
+        long startedAt = System.currentTimeMillis();
+        Long orderId = orderService.createOrder(
+                new OrderRequestDTO(userId, new BigDecimal("20.00"), OrderStatus.PENDING, List.of(item))).getId();
+        assertEquals(3, productRepository.findById(productId).orElseThrow().getStock());
+
+        // Three failed attempts with 2s and 3s in between, plus relay and consumer latency
+        long deadline = System.currentTimeMillis() + 30_000;
+        Order order = orderRepository.findById(orderId).orElseThrow();
+        while (order.getStatus() != OrderStatus.EXPIRED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+            order = orderRepository.findById(orderId).orElseThrow();
+        }
+
+        assertEquals(OrderStatus.EXPIRED, order.getStatus(), "Order should expire once its payment retries ran out");
+        assertTrue(System.currentTimeMillis() - startedAt >= 5_000, "Order expired before both retry delays passed");
+        assertEquals(5, productRepository.findById(productId).orElseThrow().getStock(), "Expired order should give its stock back");
+
+        while (notificationRepository.findByOrderId(orderId).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        assertTrue(notificationRepository.findByOrderId(orderId).stream().anyMatch(n -> "ORDER_EXPIRED".equals(n.getType())),
+                "ORDER_EXPIRED notification should be created");
+    }
+
+    @Test
+    @DisplayName("A retry waiting out its backoff is not committed and survives a restart of the retry consumer")
+    void testRetryWaitingOnItsTopicSurvivesRestart() throws Exception {
+        Long userId = userRepository.findAll().get(0).getId();
+        Long productId = productService.createProduct(
+                new ProductRequestDTO("Restarted Retry Product", "Retried across a restart", new BigDecimal("10.00"), 5, 0)).getId();
+        OrderItemDTO item = new OrderItemDTO(null, productId, null, 1, new BigDecimal("10.00"));
+        TopicPartition firstRetry = new TopicPartition(retryPolicy.topicOf(1), 0);
+        long retriesBefore = committedOffset(firstRetry);
+        long startedAt = System.currentTimeMillis();
+        Long orderId = orderService.createOrder(
+                new OrderRequestDTO(userId, new BigDecimal("10.00"), OrderStatus.PENDING, List.of(item))).getId();
+
+        // The first payment failed and its retry reached the listener, which paused the partition to wait for it
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(OrderEventConsumer.PAYMENT_RETRY_LISTENER_ID);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!container.isPartitionPaused(firstRetry) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(container.isPartitionPaused(firstRetry), "The retry listener should wait for the retry on its topic");
+        assertEquals(OrderStatus.PROCESSING, orderRepository.findById(orderId).orElseThrow().getStatus());
+        assertEquals(retriesBefore, committedOffset(firstRetry), "A retry still waiting must not be committed");
+
+        container.stop();
+        container.start();
+
+        Order order = orderRepository.findById(orderId).orElseThrow();
+        while (order.getStatus() != OrderStatus.EXPIRED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+            order = orderRepository.findById(orderId).orElseThrow();
+        }
+        assertEquals(OrderStatus.EXPIRED, order.getStatus(), "The retry should still run after the restart");
+        assertTrue(System.currentTimeMillis() - startedAt >= 5_000, "Order expired before both retry delays passed");
+        // Committed before the listener's next poll
+        while (committedOffset(firstRetry) < retriesBefore + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        assertEquals(retriesBefore + 1, committedOffset(firstRetry), "The retry should be committed once it ran");
+    }
+
+    @Test
+    @DisplayName("Retries that are due together are attempted together, off the listener thread, and then committed")
+    void testDueRetriesAreAttemptedConcurrently() throws Exception {
+        User user = userRepository.findAll().get(0);
+        // Last retries, so each failed attempt expires its order right away
+        int attempt = retryPolicy.getMaxAttempts();
+        TopicPartition lastRetry = new TopicPartition(retryPolicy.topicOf(attempt), 0);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < DUE_RETRIES; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(new BigDecimal("1.00"));
+            order.setStatus(OrderStatus.PROCESSING);
+            orderIds.add(orderRepository.save(order).getId());
+        }
+
+        // Sent while the listener is stopped, long after they were due, so one poll gets them all
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(OrderEventConsumer.PAYMENT_RETRY_LISTENER_ID);
+        container.stop();
+        long lastOffset = 0;
+        DefaultKafkaProducerFactory<String, byte[]> producerFactory = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new ByteArraySerializer());
+        try {
+            KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory);
+            long failedAt = System.currentTimeMillis() - 60_000;
+            for (Long orderId : orderIds) {
+                ProducerRecord<String, byte[]> record = new ProducerRecord<>(lastRetry.topic(), null, failedAt, String.valueOf(orderId),
+                        objectMapper.writeValueAsBytes(new PaymentRetryEvent(orderId, attempt, LocalDateTime.now().minusMinutes(1))));
+                record.headers().add(OrderEventType.HEADER, OrderEventType.PAYMENT_RETRY.getHeaderValue().getBytes(StandardCharsets.UTF_8));
+                lastOffset = template.send(record).get().getRecordMetadata().offset();
+            }
+        } finally {
+            producerFactory.destroy();
+        }
+        container.start();
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (countExpired(orderIds) < DUE_RETRIES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        List<Order> orders = orderRepository.findAllById(orderIds);
+        assertTrue(orders.stream().allMatch(order -> order.getStatus() == OrderStatus.EXPIRED), "Every due retry should be attempted");
+        // One after another on the listener thread, the attempts would take the processing delay each
+        LocalDateTime first = orders.stream().map(Order::getUpdatedAt).min(LocalDateTime::compareTo).orElseThrow();
+        LocalDateTime last = orders.stream().map(Order::getUpdatedAt).max(LocalDateTime::compareTo).orElseThrow();
+        long spreadMs = Duration.between(first, last).toMillis();
+        assertTrue(spreadMs < (DUE_RETRIES - 1) * PROCESSING_DELAY_MS / 2,
+                "The attempts took " + spreadMs + " ms from the first to the last, they did not overlap");
+
+        while (committedOffset(lastRetry) <= lastOffset && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        assertEquals(lastOffset + 1, committedOffset(lastRetry), "The retries should be committed once they ran");
+    }
+
+    private long countExpired(List<Long> orderIds) {
+        return orderRepository.findAllById(orderIds).stream()
+                .filter(order -> order.getStatus() == OrderStatus.EXPIRED)
+                .count();
+    }
+
+    private long committedOffset(TopicPartition partition) throws Exception {
+        OffsetAndMetadata committed = KafkaTestUtils.getCurrentOffset(broker.getBrokersAsString(), "payment-retry-group",
+                partition.topic(), partition.partition());
+        return committed == null ? 0 : committed.offset();
+    }
+}
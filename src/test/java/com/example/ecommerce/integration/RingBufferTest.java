@@ -0,0 +1,96 @@
+package com.example.ecommerce.integration;
+
+import com.example.ecommerce.event.bus.RingBuffer;
+import com.example.ecommerce.event.bus.WaitStrategy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Publishes far more events than the ring holds to a fast and a slow subscriber: both see every
+ * event once and in order, the slow one gets them in batches, and the publisher is held back
+ * instead of overwriting entries the slow subscriber has not handled yet.
+ */
+class RingBufferTest {
+
+    private static final int RING_SIZE = 64;
+    private static final int EVENTS = 20_000;
+    private static final int MAX_BATCH = 50;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    @DisplayName("Every subscriber sees every event in order, in batches, without entries being overwritten early")
+    void testSubscribersSeeEveryEventInOrder(String waitStrategy) throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> violations = new ArrayList<>();
+        AtomicInteger slowBatches = new AtomicInteger();
+
+        try (RingBuffer<long[]> ringBuffer = new RingBuffer<>(RING_SIZE, () -> new long[1], WaitStrategy.of(waitStrategy))) {
+            ringBuffer.subscribe("fast", MAX_BATCH, checkingOrder("fast", done, violations, batch -> { }));
+            ringBuffer.subscribe("slow", MAX_BATCH, checkingOrder("slow", done, violations, batch -> {
+                slowBatches.incrementAndGet();
+                if (batch.size() > MAX_BATCH) {
+                    record(violations, "Batch of " + batch.size() + " is over the limit");
+                }
+                sleep(1);
+            }));
+
+            for (long value = 0; value < EVENTS; value++) {
+                long published = value;
+                ringBuffer.publish((entry, sequence) -> entry[0] = published);
+            }
+
+            assertTrue(done.await(60, TimeUnit.SECONDS), "Subscribers did not see every event");
+            assertTrue(violations.isEmpty(), String.join("\n", violations));
+            assertTrue(slowBatches.get() < EVENTS / 2, "The slow subscriber should be handed events in batches, got "
+                    + slowBatches.get() + " batches for " + EVENTS + " events");
+        }
+    }
+
+    // Expects the values 0, 1, 2, ... and counts down once the last one was seen
+    private static Consumer<List<long[]>> checkingOrder(String name, CountDownLatch done, List<String> violations,
+                                                        Consumer<List<long[]>> work) {
+        long[] expected = {0};
+        return batch -> {
+            for (long[] entry : batch) {
+                if (entry[0] != expected[0]) {
+                    record(violations, name + " saw " + entry[0] + " where " + expected[0] + " was expected");
+                }
+                expected[0] = entry[0] + 1;
+            }
+            work.accept(batch);
+            // Still the same values after the work, so the publisher did not overwrite them meanwhile
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i)[0] != expected[0] - batch.size() + i) {
+                    record(violations, name + "'s entry was overwritten while being handled");
+                }
+            }
+            if (expected[0] == EVENTS) {
+                done.countDown();
+            }
+        };
+    }
+
+    private static void record(List<String> violations, String violation) {
+        synchronized (violations) {
+            violations.add(violation);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}